@@ -0,0 +1,82 @@
+package vk.chatbot;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Синтетические данные для бенчмарков: каталоги проектов и ответы Long Poll.
+ * Генерация детерминирована, чтобы прогоны были сравнимы между собой.
+ */
+final class BenchmarkData {
+    private static final String[] WORDS = {
+            "машинное", "обучение", "java", "backend", "мобильная", "разработка", "анализ", "данных",
+            "python", "веб", "сервис", "платформа", "алгоритмы", "студенты", "проект", "нейросети",
+            "frontend", "kotlin", "android", "игры", "облако", "безопасность", "поиск", "рекомендации"
+    };
+    static final String[] MESSAGES = {
+            "начать", "найди java", "найди машинное обучение", "можно ли записаться на курс",
+            "есть ли проекты по android", "привет", "что ты умеешь?", "найди нейросети для медицины"
+    };
+
+    private BenchmarkData() {
+    }
+
+    static List<ProjectInfo> catalog(int size) {
+        Random random = new Random(42);
+        List<ProjectInfo> projects = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            projects.add(new ProjectInfo(
+                    words(random, 3 + random.nextInt(3)),
+                    words(random, 20 + random.nextInt(30)),
+                    "https://education.vk.company/project/" + i));
+        }
+        return projects;
+    }
+
+    static String longPollResponse(int updates) {
+        Random random = new Random(7);
+        JsonArray array = new JsonArray();
+        for (int i = 0; i < updates; i++) {
+            JsonObject message = new JsonObject();
+            message.addProperty("date", 1_700_000_000 + i);
+            message.addProperty("from_id", 100_000 + random.nextInt(10_000));
+            message.addProperty("id", i);
+            message.addProperty("peer_id", 100_000 + random.nextInt(10_000));
+            message.addProperty("text", MESSAGES[random.nextInt(MESSAGES.length)]);
+            message.addProperty("conversation_message_id", i);
+            message.add("attachments", new JsonArray());
+
+            JsonObject object = new JsonObject();
+            object.add("message", message);
+            object.add("client_info", new JsonObject());
+
+            JsonObject update = new JsonObject();
+            update.addProperty("group_id", Connection.GROUP_ID);
+            update.addProperty("type", "message_new");
+            update.addProperty("event_id", Integer.toHexString(random.nextInt()));
+            update.addProperty("v", Connection.VK_API_VERSION);
+            update.add("object", object);
+            array.add(update);
+        }
+
+        JsonObject response = new JsonObject();
+        response.addProperty("ts", "1234");
+        response.add("updates", array);
+        return response.toString();
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,147 @@
+package vk.chatbot;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка {@link CallbackServer} на свободном порту 127.0.0.1 с
+ * {@link VkApiSimulator} вместо VK API:
+ * <ul>
+ *     <li>{@code confirmation} получает строку подтверждения;</li>
+ *     <li>неверный или пропущенный {@code secret} и чужой, пропущенный или
+ *     строковый {@code group_id} получают 403, и событие не обрабатывается;</li>
+ *     <li>не-POST запрос получает 405;</li>
+ *     <li>повтор {@code message_new} с тем же {@code event_id} получает
+ *     {@code ok}, но до обработки доходит ровно одно событие: второе
+ *     отсекает {@link EventDeduplicator}, и ответ уходит один.</li>
+ * </ul>
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar vk.chatbot.CallbackServerCheck
+ * </pre>
+ */
+public class CallbackServerCheck {
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final int GROUP_ID = 42;
+    private static final String SECRET = "check-secret";
+    private static final String CONFIRMATION = "check-confirmation";
+    private static final long TIMEOUT_MS = 15_000;
+
+    public static void main(String[] args) throws Exception {
+        VkApiSimulator simulator = new VkApiSimulator(0, 0);
+        simulator.start();
+        simulator.recordDeliveries();
+        int port = freePort();
+        // До первого обращения к Connection и CallbackServer: настройки читаются при загрузке классов
+        System.setProperty("vkbot.apiUrl", simulator.getApiUrl());
+        System.setProperty("vkbot.accessToken", "simulator");
+        System.setProperty("vkbot.apiRps", "1000");
+        System.setProperty("vkbot.groupId", String.valueOf(GROUP_ID));
+        System.setProperty("vkbot.callbackHost", "127.0.0.1");
+        System.setProperty("vkbot.callbackPort", String.valueOf(port));
+        System.setProperty("vkbot.callbackSecret", SECRET);
+        System.setProperty("vkbot.callbackConfirmation", CONFIRMATION);
+
+        OkHttpClient client = new OkHttpClient.Builder()
+                .retryOnConnectionFailure(false)
+                .readTimeout(5, TimeUnit.SECONDS)
+                .build();
+        String url = "http://127.0.0.1:" + port + "/callback";
+        CallbackServer.start();
+        try {
+            Checks.equal("200 " + CONFIRMATION,
+                    post(client, url, "{\"type\":\"confirmation\",\"group_id\":42,\"secret\":\"check-secret\"}"),
+                    "ответ на confirmation");
+
+            Checks.equal("403 forbidden", post(client, url, messageNew(2001, "e-secret", "42", "\"wrong\"")),
+                    "неверный secret");
+            Checks.equal("403 forbidden", post(client, url, messageNew(2002, "e-no-secret", "42", null)),
+                    "без secret");
+            Checks.equal("403 forbidden", post(client, url, messageNew(2003, "e-group", "43", "\"check-secret\"")),
+                    "чужой group_id");
+            Checks.equal("403 forbidden", post(client, url, messageNew(2004, "e-no-group", null, "\"check-secret\"")),
+                    "без group_id");
+            Checks.equal("403 forbidden", post(client, url, messageNew(2005, "e-group-text", "\"42\"", "\"check-secret\"")),
+                    "group_id строкой");
+
+            try (Response response = client.newCall(new Request.Builder().url(url).get().build()).execute()) {
+                Checks.equal(405, response.code(), "GET вместо POST");
+            }
+
+            String event = messageNew(2010, "e-dup", "42", "\"check-secret\"");
+            Checks.equal("200 ok", post(client, url, event), "первая доставка message_new");
+            Checks.equal("200 ok", post(client, url, event), "повторная доставка message_new");
+
+            awaitMetric("vkbot_duplicate_events_total 1");
+            awaitDelivery(simulator, 2010);
+            Checks.equal(Arrays.asList("Да."), simulator.getDelivered(2010), "ответы на повторённое событие");
+            for (int peer = 2001; peer <= 2005; peer++) {
+                Checks.that(simulator.getDelivered(peer).isEmpty(), "отклонённое событие от " + peer + " обработано");
+            }
+
+            String metrics = Metrics.render();
+            for (String line : new String[] {
+                    "vkbot_callback_rejected_total 5",
+                    "vkbot_callback_events_total{type=\"confirmation\"} 1",
+                    "vkbot_callback_events_total{type=\"message_new\"} 2"}) {
+                Checks.that(metrics.contains(line + "\n"), "нет метрики «" + line + "»");
+            }
+        } finally {
+            CallbackServer.stop();
+            simulator.stop();
+        }
+        Checks.passed("CallbackServerCheck");
+        System.exit(0);
+    }
+
+    // groupId и secret — уже JSON-значения; null — поле пропущено
+    private static String messageNew(int peerId, String eventId, String groupId, String secret) {
+        StringBuilder json = new StringBuilder("{\"type\":\"message_new\",\"event_id\":\"").append(eventId).append('"');
+        if (groupId != null) {
+            json.append(",\"group_id\":").append(groupId);
+        }
+        if (secret != null) {
+            json.append(",\"secret\":").append(secret);
+        }
+        return json.append(",\"object\":{\"message\":{\"peer_id\":").append(peerId)
+                .append(",\"text\":\"есть ли жизнь на Марсе\"}}}").toString();
+    }
+
+    private static String post(OkHttpClient client, String url, String body) throws IOException {
+        Request request = new Request.Builder().url(url).post(RequestBody.create(body, JSON)).build();
+        try (Response response = client.newCall(request).execute()) {
+            return response.code() + " " + response.body().string();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void awaitMetric(String line) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!Metrics.render().contains(line + "\n")) {
+            Checks.that(System.currentTimeMillis() < deadline, "нет метрики «" + line + "» за " + TIMEOUT_MS + " мс");
+            Thread.sleep(20);
+        }
+    }
+
+    // Событие отмечается, когда ответ передан в MessageDispatcher, а не доставлен
+    private static void awaitDelivery(VkApiSimulator simulator, int peerId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (simulator.getDelivered(peerId).isEmpty()) {
+            Checks.that(System.currentTimeMillis() < deadline, "нет ответа " + peerId + " за " + TIMEOUT_MS + " мс");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package vk.chatbot;
+
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.OkHttpClient;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Проверка {@link HttpCatalogFetcher} на сохранённых страницах из
+ * {@code fixtures/catalog}: локальная заглушка отдаёт страницу каталога,
+ * HTML витрины в iframe и две страницы JSON-ленты Tilda.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar vk.chatbot.CatalogFetcherCheck
+ * </pre>
+ * Проверяются выбор нужного iframe, параметры запроса ленты, переход по
+ * {@code nextslice}, очистка HTML в полях и отбрасывание дублей по URL.
+ */
+public class CatalogFetcherCheck {
+    public static void main(String[] args) throws Exception {
+        List<String> feedQueries = Collections.synchronizedList(new ArrayList<>());
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/education_projects", exchange -> Checks.respond(exchange, 200,
+                "text/html; charset=utf-8", Checks.fixture("catalog/education_projects.html")));
+        server.createContext("/store/embed", exchange -> Checks.respond(exchange, 200,
+                "text/html; charset=utf-8", Checks.fixture("catalog/store_embed.html")));
+        server.createContext("/api/getproductslist/", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            feedQueries.add(query);
+            String page = query.contains("slice=2") ? "catalog/products_slice2.json" : "catalog/products_slice1.json";
+            Checks.respond(exchange, 200, "application/json", Checks.fixture(page));
+        });
+        server.start();
+
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort();
+            HttpCatalogFetcher fetcher = new HttpCatalogFetcher(new OkHttpClient(),
+                    base + "/education_projects", base + "/api/getproductslist/");
+            List<ProjectInfo> projects = fetcher.parseAllProjects();
+
+            Checks.equal(2, feedQueries.size(), "число запросов ленты");
+            Checks.that(feedQueries.get(0).contains("storepartuid=845321006941")
+                    && feedQueries.get(0).contains("recid=718000001")
+                    && feedQueries.get(0).contains("slice=1"), "параметры первого среза: " + feedQueries.get(0));
+            Checks.that(feedQueries.get(1).contains("slice=2"), "второй срез по nextslice: " + feedQueries.get(1));
+
+            Checks.equal(3, projects.size(), "число проектов");
+            Checks.equal("Технопарк", projects.get(0).getTitle(), "заголовок без тегов");
+            Checks.equal("Образовательный проект VK и МГТУ им. Баумана: backend, frontend и Java",
+                    projects.get(0).getDescription(), "описание без &nbsp;");
+            Checks.equal("https://education.vk.company/technopark", projects.get(0).getUrl(), "URL");
+            Checks.equal("https://education.vk.company/technosphere", projects.get(1).getUrl(), "порядок проектов");
+            Checks.equal("Технотрек", projects.get(2).getTitle(), "проект со второго среза");
+        } finally {
+            server.stop(0);
+        }
+        Checks.passed("CatalogFetcherCheck");
+    }
+}
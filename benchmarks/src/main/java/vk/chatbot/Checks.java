@@ -0,0 +1,55 @@
+package vk.chatbot;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Общие части запускаемых проверок ({@code *Check}): сверка с ожидаемым,
+ * чтение фикстур из ресурсов и ответ локальной заглушки. Проверка падает
+ * с {@link AssertionError} на первом расхождении.
+ */
+final class Checks {
+    private Checks() {
+    }
+
+    static void that(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    static void equal(Object expected, Object actual, String what) {
+        if (expected == null ? actual != null : !expected.equals(actual)) {
+            throw new AssertionError(what + ": ожидалось <" + expected + ">, получено <" + actual + ">");
+        }
+    }
+
+    static String fixture(String path) {
+        try (InputStream in = Checks.class.getResourceAsStream("/fixtures/" + path)) {
+            if (in == null) {
+                throw new IllegalStateException("Нет фикстуры " + path);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    static void passed(String name) {
+        System.out.println(name + ": OK");
+    }
+}
@@ -0,0 +1,97 @@
+package vk.chatbot;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Сквозной нагрузочный тест без VK: поднимает {@link VkApiSimulator},
+ * направляет на него бота и с заданной частотой шлёт {@code message_new}
+ * от заданного числа собеседников, после чего печатает пропускную
+ * способность и квантили задержки «событие → messages.send».
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar \
+ *   -Dvkbot.sim.rate=500 -Dvkbot.sim.peers=2000 -Dvkbot.sim.seconds=60 \
+ *   -Dvkbot.apiRps=1000 vk.chatbot.LoadTest
+ * </pre>
+ * Параметры: {@code vkbot.sim.rate} (событий в секунду, 200),
+ * {@code vkbot.sim.peers} (1000), {@code vkbot.sim.seconds} (30),
+ * {@code vkbot.sim.catalogSize} (1000), {@code vkbot.sim.port} (8780),
+ * {@code vkbot.sim.apiDelayMs} (задержка ответа API, 0). Ограничитель
+ * частоты бота по умолчанию соблюдает лимит VK в 20 запросов в секунду —
+ * для проверки самого бота его стоит поднять через {@code vkbot.apiRps}.
+ */
+public class LoadTest {
+    private static final long DRAIN_TIMEOUT_MS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        int rate = Integer.getInteger("vkbot.sim.rate", 200);
+        int peers = Integer.getInteger("vkbot.sim.peers", 1000);
+        int seconds = Integer.getInteger("vkbot.sim.seconds", 30);
+        int catalogSize = Integer.getInteger("vkbot.sim.catalogSize", 1000);
+        int port = Integer.getInteger("vkbot.sim.port", 8780);
+
+        VkApiSimulator simulator = new VkApiSimulator(port, Long.getLong("vkbot.sim.apiDelayMs", 0));
+        simulator.start();
+        // До первого обращения к Connection: адрес API читается при загрузке класса
+        System.setProperty("vkbot.apiUrl", simulator.getApiUrl());
+        System.setProperty("vkbot.accessToken", "simulator");
+
+        VkBot.catalog.publish(BenchmarkData.catalog(catalogSize));
+        Thread poller = new Thread(Connection::startLongPoll, "load-test-longpoll");
+        poller.setDaemon(true);
+        poller.start();
+        if (!simulator.awaitPoller(30, TimeUnit.SECONDS)) {
+            System.err.println("Бот не подключился к Long Poll симулятора");
+            System.exit(1);
+        }
+
+        System.out.printf("Нагрузка: %d событий/с от %d собеседников в течение %d с%n", rate, peers, seconds);
+        Random random = new Random(1);
+        long total = (long) rate * seconds;
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long started = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            long due = started + i * interval;
+            long delay = due - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            simulator.inject(100_000 + random.nextInt(peers),
+                    BenchmarkData.MESSAGES[random.nextInt(BenchmarkData.MESSAGES.length)]);
+        }
+        long injectedIn = System.nanoTime() - started;
+
+        long drainDeadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        while (simulator.getAwaitingCount() > 0 && System.currentTimeMillis() < drainDeadline) {
+            Thread.sleep(50);
+        }
+        long elapsed = System.nanoTime() - started;
+
+        report(simulator, injectedIn, elapsed);
+        simulator.stop();
+        System.exit(0);
+    }
+
+    private static void report(VkApiSimulator simulator, long injectedNanos, long elapsedNanos) {
+        LatencyHistogram latency = simulator.getReplyLatency();
+        long answered = latency.getCount();
+        System.out.printf(Locale.ROOT, "Отправлено событий: %d за %.1f с%n",
+                simulator.getInjectedCount(), injectedNanos / 1e9);
+        System.out.printf(Locale.ROOT, "Получен ответ: %d, без ответа: %d, прочих сообщений: %d, вызовов API: %d%n",
+                answered, simulator.getAwaitingCount(), simulator.getUnmatchedRepliesCount(),
+                simulator.getApiCallsCount());
+        System.out.printf(Locale.ROOT, "Пропускная способность: %.1f ответов/с%n", answered / (elapsedNanos / 1e9));
+        if (answered > 0) {
+            System.out.printf(Locale.ROOT, "Задержка ответа, мс: p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f среднее=%.2f%n",
+                    millis(latency.quantile(0.5)), millis(latency.quantile(0.9)),
+                    millis(latency.quantile(0.99)), millis(latency.quantile(0.999)),
+                    millis(latency.getSum() / answered));
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,152 @@
+package vk.chatbot;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.OkHttpClient;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Проверка восстановления {@link LongPollLoop} на локальной заглушке
+ * Long Poll, которая отвечает по сценарию: успех, {@code failed=1},
+ * {@code failed=2}, HTTP 500, оборванное соединение, {@code failed=3}.
+ * Для каждого запроса сверяются {@code key} и {@code ts}: после
+ * {@code failed=2} и сетевых ошибок цикл продолжает со своего {@code ts},
+ * после {@code failed=1} — с {@code ts} из ответа, после {@code failed=3}
+ * — с {@code ts} нового сервера.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar vk.chatbot.LongPollLoopCheck
+ * </pre>
+ */
+public class LongPollLoopCheck {
+    private static final Gson gson = new Gson();
+
+    private interface Reply {
+        void send(HttpExchange exchange) throws IOException;
+    }
+
+    private static final class Step {
+        final String key;
+        final String ts;
+        final Reply reply;
+
+        Step(String key, String ts, Reply reply) {
+            this.key = key;
+            this.ts = ts;
+            this.reply = reply;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        // До загрузки LongPollLoop: задержки повторов читаются один раз
+        System.setProperty("vkbot.longPollBackoffMs", "10");
+        System.setProperty("vkbot.longPollMaxBackoffMs", "50");
+
+        List<Step> script = Arrays.asList(
+                new Step("k1", "100", json("{\"ts\":\"102\",\"updates\":[]}")),
+                new Step("k1", "102", json("{\"failed\":1,\"ts\":\"105\"}")),
+                new Step("k1", "105", json("{\"failed\":2}")),
+                new Step("k2", "105", exchange -> Checks.respond(exchange, 500, "text/plain", "error")),
+                new Step("k2", "105", HttpExchange::close),
+                new Step("k2", "105", json("{\"failed\":3}")),
+                new Step("k3", "200", json("{\"ts\":\"201\",\"updates\":[]}")));
+
+        List<String> requests = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/lp", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            int index = next.getAndIncrement();
+            if (index >= script.size()) {
+                done.countDown();
+                Checks.respond(exchange, 200, "application/json", "{\"ts\":\"201\",\"updates\":[]}");
+                return;
+            }
+            requests.add(param(query, "key") + "/" + param(query, "ts"));
+            script.get(index).reply.send(exchange);
+        });
+        server.start();
+
+        // Ключи выдаются по очереди; ts нового сервера после failed=2
+        // (999) должен быть проигнорирован. Второе подключение сначала
+        // падает: цикл должен повторить его, не трогая ts
+        String lp = "http://127.0.0.1:" + server.getAddress().getPort() + "/lp";
+        List<String> servers = Arrays.asList(
+                "{\"server\":\"" + lp + "\",\"key\":\"k1\",\"ts\":\"100\"}",
+                null,
+                "{\"server\":\"" + lp + "\",\"key\":\"k2\",\"ts\":\"999\"}",
+                "{\"server\":\"" + lp + "\",\"key\":\"k3\",\"ts\":\"200\"}");
+        AtomicInteger fetches = new AtomicInteger();
+        LongPollLoop.ServerSource source = () -> {
+            String data = servers.get(fetches.getAndIncrement());
+            if (data == null) {
+                throw new IOException("groups.getLongPollServer недоступен");
+            }
+            return gson.fromJson(data, VkApiClient.LongPollServer.class);
+        };
+
+        OkHttpClient client = new OkHttpClient.Builder()
+                .retryOnConnectionFailure(false)
+                .readTimeout(5, TimeUnit.SECONDS)
+                .build();
+        Thread loop = new Thread(() -> {
+            try {
+                new LongPollLoop(client, source).run();
+            } catch (InterruptedException e) {
+                // Конец проверки
+            }
+        }, "long-poll-check");
+        loop.start();
+
+        boolean finished = done.await(30, TimeUnit.SECONDS);
+        // До остановки: прерванный запрос тоже считается ошибкой
+        String metrics = Metrics.render();
+        loop.interrupt();
+        loop.join(TimeUnit.SECONDS.toMillis(5));
+        server.stop(0);
+
+        Checks.that(finished, "сценарий не пройден за 30 с, запросы: " + requests);
+        List<String> expected = new ArrayList<>();
+        for (Step step : script) {
+            expected.add(step.key + "/" + step.ts);
+        }
+        Checks.equal(expected, requests, "key/ts запросов");
+        Checks.equal(4, fetches.get(), "обращений к groups.getLongPollServer");
+
+        for (String line : new String[] {
+                "vkbot_longpoll_failed_total{code=\"1\"} 1",
+                "vkbot_longpoll_failed_total{code=\"2\"} 1",
+                "vkbot_longpoll_failed_total{code=\"3\"} 1",
+                "vkbot_longpoll_errors_total 3",
+                "vkbot_longpoll_gaps_total{reason=\"history\"} 1",
+                "vkbot_longpoll_gaps_total{reason=\"new_server\"} 1",
+                "vkbot_longpoll_gap_events_total 98"}) {
+            Checks.that(metrics.contains(line + "\n"), "нет метрики «" + line + "»");
+        }
+        Checks.passed("LongPollLoopCheck");
+    }
+
+    private static Reply json(String body) {
+        return exchange -> Checks.respond(exchange, 200, "application/json", body);
+    }
+
+    private static String param(String query, String name) {
+        for (String pair : query.split("&")) {
+            if (pair.startsWith(name + "=")) {
+                return pair.substring(name.length() + 1);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,69 @@
+package vk.chatbot;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор ответа Long Poll: прежний путь через дерево Gson (с выбором
+ * командой через {@link VkBot#commands}) и потоковый
+ * {@link LongPollParser}, которым пользуется {@link Connection#startLongPoll()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LongPollParseBenchmark {
+    @Param({"1", "10", "100", "1000"})
+    int updates;
+
+    String payload;
+
+    @Setup
+    public void setup() {
+        payload = BenchmarkData.longPollResponse(updates);
+    }
+
+    @Benchmark
+    public void parseTree(Blackhole bh) {
+        JsonObject response = JsonParser.parseString(payload).getAsJsonObject();
+        bh.consume(response.get("ts").getAsString());
+        for (JsonElement element : response.getAsJsonArray("updates")) {
+            bh.consume(element.getAsJsonObject());
+        }
+    }
+
+    @Benchmark
+    public void parseStreaming(Blackhole bh) throws IOException {
+        LongPollParser.Result response = LongPollParser.parse(new StringReader(payload));
+        bh.consume(response.getTs());
+        for (MessageEvent event : response.getEvents()) {
+            bh.consume(event);
+        }
+    }
+
+    @Benchmark
+    public void parseAndDispatch(Blackhole bh) {
+        JsonObject response = JsonParser.parseString(payload).getAsJsonObject();
+        for (JsonElement element : response.getAsJsonArray("updates")) {
+            JsonObject update = element.getAsJsonObject();
+            if (!"message_new".equals(update.get("type").getAsString())) continue;
+
+            JsonObject msg = update.getAsJsonObject("object").getAsJsonObject("message");
+            int peerId = msg.get("peer_id").getAsInt();
+            String text = msg.get("text").getAsString().trim();
+
+            CommandRouter.Match command = VkBot.commands.match(text);
+            bh.consume(peerId);
+            bh.consume(command);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package vk.chatbot;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка обработки ошибок VK API при отправке через
+ * {@link MessageDispatcher} и {@link VkApiClient} на {@link VkApiSimulator}:
+ * <ul>
+ *     <li>ошибка 6 на весь {@code execute} повторяется, и сообщение доходит;</li>
+ *     <li>постоянная ошибка (5 на весь вызов, 901 на отдельную отправку)
+ *     сразу завершает future без повторов;</li>
+ *     <li>временная ошибка отдельной отправки в {@code execute_errors}
+ *     повторяется с тем же {@code random_id}, а сообщения собеседника,
+ *     отправленные позже, уходят после повтора;</li>
+ *     <li>несколько сообщений одному собеседнику в одной пачке доходят по
+ *     порядку.</li>
+ * </ul>
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar vk.chatbot.MessageDispatcherCheck
+ * </pre>
+ */
+public class MessageDispatcherCheck {
+    private static final long TIMEOUT_SEC = 15;
+
+    public static void main(String[] args) throws Exception {
+        VkApiSimulator simulator = new VkApiSimulator(Integer.getInteger("vkbot.sim.port", 8781), 0);
+        simulator.start();
+        simulator.recordDeliveries();
+        // До первого обращения к Connection: адрес и лимиты читаются при загрузке класса
+        System.setProperty("vkbot.apiUrl", simulator.getApiUrl());
+        System.setProperty("vkbot.accessToken", "simulator");
+        System.setProperty("vkbot.apiRps", "1000");
+
+        try {
+            throttledCallIsRetried(simulator);
+            permanentCallErrorFailsAtOnce(simulator);
+            permanentSendErrorFailsAtOnce(simulator);
+            throttledSendIsRetriedInOrder(simulator);
+            batchKeepsPeerOrder(simulator);
+        } finally {
+            simulator.stop();
+        }
+        Checks.passed("MessageDispatcherCheck");
+        System.exit(0);
+    }
+
+    private static void throttledCallIsRetried(VkApiSimulator simulator) throws Exception {
+        int peer = 1001;
+        simulator.failCalls("execute", VkApiException.TOO_MANY_REQUESTS, 2);
+        Integer messageId = MessageDispatcher.send(peer, "после 6").get(TIMEOUT_SEC, TimeUnit.SECONDS);
+        Checks.that(messageId != null && messageId > 0, "нет id сообщения после повторов");
+        Checks.equal(Arrays.asList("после 6"), simulator.getDelivered(peer), "доставлено после ошибки 6");
+        Checks.that(Metrics.render().contains("vkbot_api_retries_total{method=\"execute\"} 2\n"),
+                "ожидалось два повтора execute");
+    }
+
+    private static void permanentCallErrorFailsAtOnce(VkApiSimulator simulator) throws Exception {
+        int peer = 1002;
+        simulator.failCalls("execute", VkApiException.AUTHORIZATION_FAILED, 1);
+        long started = System.nanoTime();
+        int code = failureCode(MessageDispatcher.send(peer, "без доступа"));
+        Checks.equal(VkApiException.AUTHORIZATION_FAILED, code, "код ошибки всего вызова");
+        Checks.that(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 1000,
+                "постоянная ошибка не должна ждать повторов");
+        Checks.that(simulator.getDelivered(peer).isEmpty(), "сообщение не должно быть доставлено");
+    }
+
+    private static void permanentSendErrorFailsAtOnce(VkApiSimulator simulator) throws Exception {
+        int peer = 1003;
+        simulator.failSends(peer, 901, 1);
+        int code = failureCode(MessageDispatcher.send(peer, "запрещено"));
+        Checks.equal(901, code, "код ошибки отдельной отправки");
+        Checks.equal(1, simulator.getSendAttempts(peer), "попыток при постоянной ошибке");
+    }
+
+    private static void throttledSendIsRetriedInOrder(VkApiSimulator simulator) throws Exception {
+        int peer = 1004;
+        simulator.failSends(peer, VkApiException.FLOOD_CONTROL, 2);
+        CompletableFuture<Integer> first = MessageDispatcher.send(peer, "первое", 11);
+        CompletableFuture<Integer> second = MessageDispatcher.send(peer, "второе", 12);
+        // Уходит, пока первые два ждут повтора
+        Thread.sleep(120);
+        CompletableFuture<Integer> third = MessageDispatcher.send(peer, "третье", 13);
+
+        CompletableFuture.allOf(first, second, third).get(TIMEOUT_SEC, TimeUnit.SECONDS);
+        Checks.equal(Arrays.asList("первое", "второе", "третье"), simulator.getDelivered(peer),
+                "порядок после повтора ошибки 9");
+        Checks.equal(5, simulator.getSendAttempts(peer), "попыток: две неудачных и три успешных");
+    }
+
+    private static void batchKeepsPeerOrder(VkApiSimulator simulator) throws Exception {
+        int peer = 1005;
+        CompletableFuture<Integer> a = MessageDispatcher.send(peer, "раз");
+        CompletableFuture<Integer> b = MessageDispatcher.send(peer, "два");
+        CompletableFuture<Integer> c = MessageDispatcher.send(peer, "три");
+        CompletableFuture.allOf(a, b, c).get(TIMEOUT_SEC, TimeUnit.SECONDS);
+        Checks.equal(Arrays.asList("раз", "два", "три"), simulator.getDelivered(peer), "порядок в пачке");
+        Checks.that(a.get() < b.get() && b.get() < c.get(), "id сообщений должны расти по порядку");
+    }
+
+    private static int failureCode(CompletableFuture<Integer> future) throws Exception {
+        try {
+            future.get(TIMEOUT_SEC, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            Checks.that(e.getCause() instanceof VkApiException, "ожидалась VkApiException: " + e.getCause());
+            return ((VkApiException) e.getCause()).getCode();
+        }
+        throw new AssertionError("ожидалась ошибка отправки");
+    }
+}
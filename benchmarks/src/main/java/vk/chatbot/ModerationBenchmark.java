@@ -0,0 +1,37 @@
+package vk.chatbot;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка сообщения фильтром {@link VkBot#containsBadWords} на
+ * сообщениях разной длины; словарь задаётся {@code -Dvkbot.badWordsPath}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModerationBenchmark {
+    @Param({"16", "256", "4096"})
+    int length;
+
+    String text;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder(length);
+        int i = 0;
+        while (sb.length() < length) {
+            sb.append(BenchmarkData.MESSAGES[i++ % BenchmarkData.MESSAGES.length]).append(' ');
+        }
+        text = sb.substring(0, length);
+    }
+
+    @Benchmark
+    public boolean containsBadWords() {
+        return VkBot.containsBadWords(text);
+    }
+}
@@ -0,0 +1,52 @@
+package vk.chatbot;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск по каталогам разного размера: построение индекса и ответ на
+ * запрос «найди» через {@link VkBot#generateAnswer} (с кэшем) и
+ * {@link VkBot#buildAnswer} (без него).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+    @Param({"100", "1000", "10000", "100000"})
+    int catalogSize;
+
+    @Param({"java", "машинное обучение", "отсутствующий"})
+    String query;
+
+    List<ProjectInfo> projects;
+
+    @Setup
+    public void setup() {
+        projects = BenchmarkData.catalog(catalogSize);
+        VkBot.catalog.publish(projects);
+    }
+
+    @Benchmark
+    public String generateAnswer() {
+        return VkBot.generateAnswer(query);
+    }
+
+    @Benchmark
+    public String buildAnswer() {
+        return VkBot.buildAnswer(VkBot.catalog.current(), query);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 3)
+    public Catalog buildCatalog() {
+        return Catalog.of(projects, 1);
+    }
+}
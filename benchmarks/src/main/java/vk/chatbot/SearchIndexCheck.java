@@ -0,0 +1,40 @@
+package vk.chatbot;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Проверка терпимости {@link SearchIndex} к опечаткам и раскладке: слово с
+ * опечаткой (латиницей и кириллицей) и русское слово, набранное
+ * транслитом, находят свой проект первым.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar vk.chatbot.SearchIndexCheck
+ * </pre>
+ */
+public class SearchIndexCheck {
+    public static void main(String[] args) {
+        SearchIndex index = SearchIndex.build(Arrays.asList(
+                new ProjectInfo("Анализ данных на Python", "Курс по python и pandas", "https://example.org/python"),
+                new ProjectInfo("Мобильная разработка", "Android-приложения на Kotlin", "https://example.org/kotlin"),
+                new ProjectInfo("Технопарк", "Backend-разработка и высоконагруженные системы", "https://example.org/backend"),
+                new ProjectInfo("Образовательная платформа", "Platform engineering и DevOps", "https://example.org/platform"),
+                new ProjectInfo("Олимпиада по программированию", "Соревнования для школьников", "https://example.org/olymp")));
+
+        expectTop(index, "pythn", "https://example.org/python");
+        expectTop(index, "pyhton", "https://example.org/python");
+        expectTop(index, "kotlen", "https://example.org/kotlin");
+        expectTop(index, "backand", "https://example.org/backend");
+        expectTop(index, "platfrom", "https://example.org/platform");
+        expectTop(index, "olimpiada", "https://example.org/olymp");
+        expectTop(index, "олимпиаде", "https://example.org/olymp");
+        expectTop(index, "олимпияда", "https://example.org/olymp");
+        Checks.that(index.search("zzzzqqq", 3).isEmpty(), "несуществующее слово ничего не находит");
+        Checks.passed("SearchIndexCheck");
+    }
+
+    private static void expectTop(SearchIndex index, String query, String url) {
+        List<SearchIndex.Hit> hits = index.search(query, 3);
+        Checks.that(!hits.isEmpty(), "«" + query + "»: ничего не найдено");
+        Checks.equal(url, hits.get(0).getProject().getUrl(), "«" + query + "»: первый результат");
+    }
+}
@@ -0,0 +1,407 @@
+package vk.chatbot;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Локальная замена VK API для нагрузочных тестов: {@code groups.getLongPollServer},
+ * Long Poll {@code a_check}, {@code messages.send} (и внутри {@code execute})
+ * и {@code users.get}. События {@code message_new} добавляет
+ * {@link #inject}; время от добавления события до первого
+ * {@code messages.send} с соответствующим {@code random_id} попадает в
+ * гистограмму задержек ответа.
+ * <p>
+ * Бот направляется сюда через {@code -Dvkbot.apiUrl=}{@link #getApiUrl()}.
+ * <p>
+ * Для проверок обработки ошибок: {@link #failCalls} возвращает ошибку на
+ * весь вызов метода, {@link #failSends} — ошибку отдельного
+ * {@code messages.send} внутри {@code execute} (в {@code execute_errors}),
+ * а {@link #recordDeliveries} сохраняет тексты доставленных сообщений.
+ */
+public class VkApiSimulator {
+    private static final String SEND_PREFIX = "r.push(API.messages.send(";
+    private static final String SEND_SUFFIX = "));";
+
+    private final int port;
+    private final long apiDelayMs;
+    private HttpServer server;
+
+    // Очередь событий Long Poll: ts события = base + индекс в очереди
+    private final ArrayDeque<String> events = new ArrayDeque<>();
+    private long base = 1;
+
+    private final Map<Integer, Long> awaitingReply = new ConcurrentHashMap<>();
+    private final LatencyHistogram replyLatency = new LatencyHistogram();
+    private final LongAdder injected = new LongAdder();
+    private final LongAdder replies = new LongAdder();
+    private final LongAdder unmatchedReplies = new LongAdder();
+    private final LongAdder apiCalls = new LongAdder();
+    private final AtomicInteger eventIds = new AtomicInteger();
+    private final AtomicInteger messageIds = new AtomicInteger();
+    private final CountDownLatch polling = new CountDownLatch(1);
+
+    // Сколько ближайших вызовов метода (или отправок собеседнику) завершить ошибкой и с каким кодом
+    private final Map<String, ArrayDeque<Integer>> callFailures = new HashMap<>();
+    private final Map<Integer, ArrayDeque<Integer>> sendFailures = new HashMap<>();
+    private volatile boolean recordDeliveries;
+    private final Map<Integer, List<String>> delivered = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicInteger> sendAttempts = new ConcurrentHashMap<>();
+
+    /**
+     * @param apiDelayMs искусственная задержка каждого вызова метода API
+     */
+    public VkApiSimulator(int port, long apiDelayMs) {
+        this.port = port;
+        this.apiDelayMs = apiDelayMs;
+    }
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/method/groups.getLongPollServer", exchange -> api(exchange, this::longPollServer));
+        server.createContext("/method/users.get", exchange -> api(exchange, this::usersGet));
+        server.createContext("/method/messages.send", exchange -> api(exchange, this::messagesSend));
+        server.createContext("/method/execute", exchange -> api(exchange, this::execute));
+        server.createContext("/lp", this::check);
+        // a_check держит соединение до 25 секунд, поэтому потоков не жалеем
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "vk-simulator");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public String getApiUrl() {
+        // Порт 0 — свободный, выбранный при запуске
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/method/";
+    }
+
+    /**
+     * Добавляет событие {@code message_new} от {@code peerId}.
+     */
+    public void inject(int peerId, String text) {
+        String eventId = "sim" + eventIds.incrementAndGet();
+        JsonObject message = new JsonObject();
+        message.addProperty("date", System.currentTimeMillis() / 1000);
+        message.addProperty("from_id", peerId);
+        message.addProperty("peer_id", peerId);
+        message.addProperty("text", text);
+
+        JsonObject object = new JsonObject();
+        object.add("message", message);
+
+        JsonObject update = new JsonObject();
+        update.addProperty("group_id", Connection.GROUP_ID);
+        update.addProperty("type", "message_new");
+        update.addProperty("event_id", eventId);
+        update.add("object", object);
+
+        // Тот же random_id, что бот выведет для первого ответа на событие
+        awaitingReply.put(new MessageEvent(eventId, peerId, text).nextRandomId(), System.nanoTime());
+        injected.increment();
+        String json = update.toString();
+        synchronized (events) {
+            events.add(json);
+            events.notifyAll();
+        }
+    }
+
+    /**
+     * Ждёт первого {@code a_check}: события, добавленные раньше, бот не
+     * увидит, потому что начнёт с текущего {@code ts}.
+     */
+    public boolean awaitPoller(long timeout, TimeUnit unit) throws InterruptedException {
+        return polling.await(timeout, unit);
+    }
+
+    /**
+     * Ближайшие {@code times} вызовов {@code method} вернут ошибку {@code code}.
+     */
+    public void failCalls(String method, int code, int times) {
+        synchronized (callFailures) {
+            ArrayDeque<Integer> codes = callFailures.computeIfAbsent(method, k -> new ArrayDeque<>());
+            for (int i = 0; i < times; i++) {
+                codes.add(code);
+            }
+        }
+    }
+
+    /**
+     * Ближайшие {@code times} отправок собеседнику {@code peerId} внутри
+     * {@code execute} вернут {@code false} и ошибку {@code code} в
+     * {@code execute_errors}.
+     */
+    public void failSends(int peerId, int code, int times) {
+        synchronized (sendFailures) {
+            ArrayDeque<Integer> codes = sendFailures.computeIfAbsent(peerId, k -> new ArrayDeque<>());
+            for (int i = 0; i < times; i++) {
+                codes.add(code);
+            }
+        }
+    }
+
+    public void recordDeliveries() {
+        recordDeliveries = true;
+    }
+
+    /**
+     * Тексты сообщений собеседнику в порядке доставки (после {@link #recordDeliveries}).
+     */
+    public List<String> getDelivered(int peerId) {
+        List<String> texts = delivered.get(peerId);
+        return texts == null ? new ArrayList<>() : new ArrayList<>(texts);
+    }
+
+    /**
+     * Попытки отправки собеседнику внутри {@code execute}, включая неудачные.
+     */
+    public int getSendAttempts(int peerId) {
+        AtomicInteger attempts = sendAttempts.get(peerId);
+        return attempts == null ? 0 : attempts.get();
+    }
+
+    public LatencyHistogram getReplyLatency() {
+        return replyLatency;
+    }
+
+    public long getInjectedCount() {
+        return injected.sum();
+    }
+
+    public long getRepliesCount() {
+        return replies.sum();
+    }
+
+    // Ответы без ожидающего события: вторые сообщения команды или дубли
+    public long getUnmatchedRepliesCount() {
+        return unmatchedReplies.sum();
+    }
+
+    public long getApiCallsCount() {
+        return apiCalls.sum();
+    }
+
+    public int getAwaitingCount() {
+        return awaitingReply.size();
+    }
+
+    private void check(HttpExchange exchange) throws IOException {
+        Map<String, String> params = params(exchange);
+        long ts = Long.parseLong(params.getOrDefault("ts", "0"));
+        long waitMs = TimeUnit.SECONDS.toMillis(Long.parseLong(params.getOrDefault("wait", "25")));
+        long deadline = System.currentTimeMillis() + waitMs;
+        polling.countDown();
+
+        StringBuilder updates = new StringBuilder("[");
+        long nextTs;
+        synchronized (events) {
+            // Подтверждённые клиентом события больше не нужны
+            while (base < ts && !events.isEmpty()) {
+                events.poll();
+                base++;
+            }
+            try {
+                long left;
+                while (base + events.size() <= ts && (left = deadline - System.currentTimeMillis()) > 0) {
+                    events.wait(left);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            long skip = Math.max(0, ts - base);
+            int index = 0;
+            for (String event : events) {
+                if (index++ < skip) {
+                    continue;
+                }
+                if (updates.length() > 1) {
+                    updates.append(',');
+                }
+                updates.append(event);
+            }
+            nextTs = base + events.size();
+        }
+        updates.append(']');
+        respond(exchange, "{\"ts\":\"" + nextTs + "\",\"updates\":" + updates + "}");
+    }
+
+    private JsonObject longPollServer(Map<String, String> params, JsonObject envelope) {
+        JsonObject server = new JsonObject();
+        server.addProperty("server", "http://127.0.0.1:" + port + "/lp");
+        server.addProperty("key", "simulator");
+        synchronized (events) {
+            server.addProperty("ts", String.valueOf(base + events.size()));
+        }
+        return server;
+    }
+
+    private JsonArray usersGet(Map<String, String> params, JsonObject envelope) {
+        JsonArray users = new JsonArray();
+        for (String id : params.getOrDefault("user_ids", "").split(",")) {
+            if (id.isEmpty()) {
+                continue;
+            }
+            JsonObject user = new JsonObject();
+            user.addProperty("id", Integer.parseInt(id));
+            user.addProperty("first_name", "Пользователь" + id);
+            user.addProperty("last_name", "Тестовый");
+            users.add(user);
+        }
+        return users;
+    }
+
+    private Integer messagesSend(Map<String, String> params, JsonObject envelope) {
+        onReply(Integer.parseInt(params.getOrDefault("random_id", "0")));
+        return messageIds.incrementAndGet();
+    }
+
+    // Поддерживается только код, который строит MessageDispatcher
+    private JsonArray execute(Map<String, String> params, JsonObject envelope) {
+        JsonArray results = new JsonArray();
+        JsonArray errors = new JsonArray();
+        for (String line : params.getOrDefault("code", "").split("\n")) {
+            if (line.startsWith(SEND_PREFIX) && line.endsWith(SEND_SUFFIX)) {
+                String json = line.substring(SEND_PREFIX.length(), line.length() - SEND_SUFFIX.length());
+                JsonObject call = JsonParser.parseString(json).getAsJsonObject();
+                int peerId = call.has("peer_id") ? call.get("peer_id").getAsInt() : 0;
+                if (recordDeliveries) {
+                    sendAttempts.computeIfAbsent(peerId, k -> new AtomicInteger()).incrementAndGet();
+                }
+                Integer failure = poll(sendFailures, peerId);
+                if (failure != null) {
+                    results.add(false);
+                    errors.add(error("messages.send", failure));
+                    continue;
+                }
+                if (recordDeliveries) {
+                    delivered.computeIfAbsent(peerId, k -> Collections.synchronizedList(new ArrayList<>()))
+                            .add(call.get("message").getAsString());
+                }
+                onReply(call.has("random_id") ? call.get("random_id").getAsInt() : 0);
+                results.add(messageIds.incrementAndGet());
+            }
+        }
+        if (errors.size() > 0) {
+            envelope.add("execute_errors", errors);
+        }
+        return results;
+    }
+
+    private static <K> Integer poll(Map<K, ArrayDeque<Integer>> failures, K key) {
+        synchronized (failures) {
+            ArrayDeque<Integer> codes = failures.get(key);
+            return codes == null ? null : codes.poll();
+        }
+    }
+
+    private static JsonObject error(String method, int code) {
+        JsonObject error = new JsonObject();
+        error.addProperty("method", method);
+        error.addProperty("error_code", code);
+        error.addProperty("error_msg", "simulated error " + code);
+        return error;
+    }
+
+    private void onReply(int randomId) {
+        replies.increment();
+        Long injectedAt = awaitingReply.remove(randomId);
+        if (injectedAt == null) {
+            unmatchedReplies.increment();
+        } else {
+            replyLatency.record(System.nanoTime() - injectedAt);
+        }
+    }
+
+    private interface Method {
+        // envelope — весь ответ: сюда можно добавить поля рядом с response
+        Object call(Map<String, String> params, JsonObject envelope);
+    }
+
+    private void api(HttpExchange exchange, Method method) throws IOException {
+        apiCalls.increment();
+        if (apiDelayMs > 0) {
+            try {
+                Thread.sleep(apiDelayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        JsonObject response = new JsonObject();
+        Map<String, String> params = params(exchange);
+        String name = exchange.getHttpContext().getPath().substring("/method/".length());
+        Integer failure = poll(callFailures, name);
+        if (failure != null) {
+            response.add("error", error(name, failure));
+            respond(exchange, response.toString());
+            return;
+        }
+        Object result = method.call(params, response);
+        if (result instanceof JsonObject) {
+            response.add("response", (JsonObject) result);
+        } else if (result instanceof JsonArray) {
+            response.add("response", (JsonArray) result);
+        } else {
+            response.addProperty("response", (Number) result);
+        }
+        respond(exchange, response.toString());
+    }
+
+    private static Map<String, String> params(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseQuery(exchange.getRequestURI().getRawQuery(), params);
+        if ("POST".equals(exchange.getRequestMethod())) {
+            try (InputStream in = exchange.getRequestBody()) {
+                parseQuery(new String(in.readAllBytes(), StandardCharsets.UTF_8), params);
+            }
+        }
+        return params;
+    }
+
+    private static void parseQuery(String query, Map<String, String> params) {
+        if (query == null || query.isEmpty()) {
+            return;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private static void respond(HttpExchange exchange, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
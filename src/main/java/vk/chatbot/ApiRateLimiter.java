@@ -0,0 +1,133 @@
+package vk.chatbot;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Общий для всех вызовов VK API ограничитель частоты (token bucket).
+ * Токен получает самый приоритетный из ожидающих: ответы пользователям
+ * не ждут, пока пройдут справочные запросы вроде {@code users.get}.
+ * <p>
+ * Ожидание не занимает поток: {@link #acquire} возвращает future, который
+ * завершается, когда выдан токен. Очереди разбирает один служебный поток.
+ */
+public class ApiRateLimiter {
+    public enum Priority {
+        // Служебные вызовы, без которых бот не получает события
+        SYSTEM,
+        // Ответы пользователям
+        REPLY,
+        // Справочные запросы
+        LOOKUP
+    }
+
+    private static final long MIN_RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final double permitsPerSecond;
+    private final double maxPermits;
+    private final List<ArrayDeque<CompletableFuture<Void>>> waiting = new ArrayList<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "api-rate-limiter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private double permits;
+    private long lastRefillNanos;
+    private boolean drainScheduled;
+
+    public ApiRateLimiter(double permitsPerSecond) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.maxPermits = Math.max(1, permitsPerSecond);
+        this.permits = maxPermits;
+        this.lastRefillNanos = System.nanoTime();
+        for (int i = 0; i < Priority.values().length; i++) {
+            waiting.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Future, который завершится, когда вызову с приоритетом
+     * {@code priority} можно идти в VK.
+     */
+    public CompletableFuture<Void> acquire(Priority priority) {
+        synchronized (this) {
+            refill();
+            if (permits >= 1 && !hasWaitersUpTo(priority)) {
+                permits -= 1;
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> ticket = new CompletableFuture<>();
+            waiting.get(priority.ordinal()).add(ticket);
+            scheduleDrain();
+            return ticket;
+        }
+    }
+
+    /**
+     * Сбрасывает накопленные токены после ответа VK «слишком много
+     * запросов»: серверный счётчик уже исчерпан.
+     */
+    public synchronized void onThrottled() {
+        refill();
+        permits = Math.min(permits, 0);
+    }
+
+    public synchronized int getWaitingCount() {
+        int total = 0;
+        for (ArrayDeque<CompletableFuture<Void>> queue : waiting) {
+            total += queue.size();
+        }
+        return total;
+    }
+
+    // Выдаёт накопившиеся токены по приоритету; завершение — вне блокировки
+    private void drain() {
+        List<CompletableFuture<Void>> granted = new ArrayList<>();
+        synchronized (this) {
+            drainScheduled = false;
+            refill();
+            for (ArrayDeque<CompletableFuture<Void>> queue : waiting) {
+                while (permits >= 1 && !queue.isEmpty()) {
+                    permits -= 1;
+                    granted.add(queue.poll());
+                }
+            }
+            if (getWaitingCount() > 0) {
+                scheduleDrain();
+            }
+        }
+        for (CompletableFuture<Void> ticket : granted) {
+            ticket.complete(null);
+        }
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled) {
+            return;
+        }
+        drainScheduled = true;
+        long delay = permits >= 1 ? 0 : (long) ((1 - permits) / permitsPerSecond * TimeUnit.SECONDS.toNanos(1));
+        scheduler.schedule(this::drain, Math.max(delay, MIN_RECHECK_NANOS), TimeUnit.NANOSECONDS);
+    }
+
+    private boolean hasWaitersUpTo(Priority priority) {
+        for (int i = 0; i <= priority.ordinal(); i++) {
+            if (!waiting.get(i).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        permits = Math.min(maxPermits, permits + (now - lastRefillNanos) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,196 @@
+package vk.chatbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+
+/**
+ * Асинхронный журнал событий с горячего пути. Вызывающий поток только
+ * кладёт событие в кольцевой буфер (без блокировок и ввода-вывода);
+ * форматирование, маскирование токенов и запись в SLF4J делает отдельный
+ * поток. Если буфер полон, событие отбрасывается и учитывается в
+ * {@code vkbot_log_dropped_total}.
+ * <p>
+ * Частые события можно прореживать: {@code -Dvkbot.logSample.<event>=0.1}
+ * оставит примерно каждое десятое. Сетевые запросы ({@code http})
+ * по умолчанию пишутся с долей 0.1, остальные события — все.
+ */
+public class AsyncLog {
+    private static final Logger logger = LoggerFactory.getLogger("vk.chatbot.events");
+    private static final int CAPACITY = Integer.highestOneBit(Math.max(2, Integer.getInteger("vkbot.logBuffer", 8192)));
+    private static final int MASK = CAPACITY - 1;
+    private static final Pattern SECRETS = Pattern.compile(
+            "((?:access_token|key|secret|token)=)[^&\\s\"]+|vk1\\.a\\.[A-Za-z0-9_\\-]+");
+
+    private static final AtomicReferenceArray<Event> slots = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicLong tail = new AtomicLong();
+    private static volatile long head;
+    private static final LongAdder dropped = new LongAdder();
+    private static final Map<String, Double> sampleRates = new ConcurrentHashMap<>();
+    // Писатель без событий спит, пока его не разбудит append; тайм-аут — подстраховка
+    private static final long IDLE_PARK_NANOS = 1_000_000_000L;
+    private static volatile boolean writerParked;
+    private static final Thread writer = startWriter();
+
+    private static final class Event {
+        final String name;
+        final int peer;
+        final String command;
+        final long latencyNanos;
+        final String message;
+
+        Event(String name, int peer, String command, long latencyNanos, String message) {
+            this.name = name;
+            this.peer = peer;
+            this.command = command;
+            this.latencyNanos = latencyNanos;
+            this.message = message;
+        }
+    }
+
+    public static void log(String event, String message) {
+        log(event, 0, null, -1, message);
+    }
+
+    /**
+     * @param peer         peer_id или 0
+     * @param command      команда бота или {@code null}
+     * @param latencyNanos задержка или -1
+     */
+    public static void log(String event, int peer, String command, long latencyNanos, String message) {
+        if (shouldLog(event)) {
+            append(event, peer, command, latencyNanos, message);
+        }
+    }
+
+    /**
+     * Решение о прореживании отдельно от записи: позволяет не собирать
+     * текст сообщения для события, которое всё равно будет отброшено.
+     */
+    public static boolean shouldLog(String event) {
+        double rate = sampleRates.computeIfAbsent(event, name -> Double.parseDouble(
+                System.getProperty("vkbot.logSample." + name, "http".equals(name) ? "0.1" : "1.0")));
+        return rate >= 1.0 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    static void append(String event, int peer, String command, long latencyNanos, String message) {
+        Event entry = new Event(event, peer, command, latencyNanos, message);
+        while (true) {
+            long claimed = tail.get();
+            if (claimed - head >= CAPACITY) {
+                dropped.increment();
+                Metrics.increment("vkbot_log_dropped_total");
+                return;
+            }
+            if (tail.compareAndSet(claimed, claimed + 1)) {
+                slots.set((int) (claimed & MASK), entry);
+                if (writerParked) {
+                    LockSupport.unpark(writer);
+                }
+                return;
+            }
+        }
+    }
+
+    public static long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    static String redact(String text) {
+        return text == null ? null : SECRETS.matcher(text).replaceAll(match ->
+                match.group(1) != null ? match.group(1) + "***" : "***");
+    }
+
+    // Кавычки, обратная косая черта и управляющие символы из текста
+    // пользователя не должны ломать формат key=value и подделывать строки
+    static void appendEscaped(StringBuilder out, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == 0x7f || c == '\u2028' || c == '\u2029') {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+    }
+
+    private static Thread startWriter() {
+        Thread thread = new Thread(AsyncLog::runWriter, "async-log");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void runWriter() {
+        StringBuilder line = new StringBuilder(256);
+        while (true) {
+            int index = (int) (head & MASK);
+            Event event = slots.get(index);
+            if (event == null) {
+                if (head != tail.get()) {
+                    // Производитель занял слот, но ещё не записал
+                    LockSupport.parkNanos(1_000);
+                    continue;
+                }
+                // Флаг до повторной проверки: append либо увидит его и
+                // разбудит, либо его событие будет замечено здесь
+                writerParked = true;
+                if (head == tail.get()) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                writerParked = false;
+                continue;
+            }
+            slots.set(index, null);
+            head = head + 1;
+
+            try {
+                line.setLength(0);
+                line.append("event=").append(event.name);
+                if (event.peer != 0) {
+                    line.append(" peer=").append(event.peer);
+                }
+                if (event.command != null) {
+                    line.append(" command=").append(event.command);
+                }
+                if (event.latencyNanos >= 0) {
+                    line.append(" latency_ms=").append(event.latencyNanos / 1_000_000.0);
+                }
+                if (event.message != null) {
+                    line.append(" msg=\"");
+                    appendEscaped(line, redact(event.message));
+                    line.append('"');
+                }
+                logger.info(line.toString());
+            } catch (Exception e) {
+                // Журнал не должен останавливать бота
+            }
+        }
+    }
+}
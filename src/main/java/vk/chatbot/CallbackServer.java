@@ -0,0 +1,175 @@
+package vk.chatbot;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Приём событий через Callback API вместо Long Poll
+ * ({@code -Dvkbot.intake=callback}). VK присылает каждое событие POST-запросом
+ * на {@code http://<vkbot.callbackHost>:<vkbot.callbackPort><vkbot.callbackPath>};
+ * сервер сразу отвечает {@code ok} и уже после этого передаёт событие в
+ * {@link VkBot#processUpdate}, так что медленная обработка не вызывает
+ * повторных доставок.
+ * <p>
+ * На запрос {@code confirmation} отвечает строкой из
+ * {@code vkbot.callbackConfirmation}. Принимаются только события с
+ * {@code group_id} сообщества бота и с {@code secret}, равным
+ * {@code vkbot.callbackSecret}. Без секрета любой, кто дотянется до порта,
+ * сможет заставить бота писать кому угодно, поэтому без него сервер
+ * слушает только 127.0.0.1 (например, за обратным прокси, который сам
+ * проверяет запросы) и отказывается стартовать на внешнем адресе.
+ * Проверить локально:
+ * <pre>
+ * curl -d '{"type":"message_new","group_id":231879059,"event_id":"e1","secret":"...",
+ *   "object":{"message":{"peer_id":1,"text":"начать"}}}' http://127.0.0.1:8080/callback
+ * </pre>
+ */
+public class CallbackServer {
+    private static final Logger logger = LoggerFactory.getLogger(CallbackServer.class);
+    static final boolean ENABLED = "callback".equalsIgnoreCase(System.getProperty("vkbot.intake", "longpoll"));
+    private static final int PORT = Integer.getInteger("vkbot.callbackPort", 8080);
+    private static final String PATH = System.getProperty("vkbot.callbackPath", "/callback");
+    private static final int THREADS = Integer.getInteger("vkbot.callbackThreads", 4);
+    private static final String CONFIRMATION = System.getProperty("vkbot.callbackConfirmation", "");
+    private static final String SECRET = System.getProperty("vkbot.callbackSecret", "");
+    // По умолчанию наружу — только с секретом
+    private static final String HOST = System.getProperty("vkbot.callbackHost", SECRET.isEmpty() ? "127.0.0.1" : "0.0.0.0");
+    // Метка type в метриках — только из известного списка, иначе other
+    private static final Set<String> KNOWN_TYPES = new HashSet<>(Arrays.asList(
+            "confirmation", "message_new", "message_reply", "message_edit", "message_allow",
+            "message_deny", "message_typing_state", "message_event"));
+
+    private static HttpServer server;
+    private static final CountDownLatch stopped = new CountDownLatch(1);
+
+    public static synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+        if (CONFIRMATION.isEmpty()) {
+            logger.warn("Не задан vkbot.callbackConfirmation: VK не сможет подтвердить адрес сервера");
+        }
+        InetSocketAddress address = new InetSocketAddress(HOST, PORT);
+        if (SECRET.isEmpty()) {
+            if (address.isUnresolved() || !address.getAddress().isLoopbackAddress()) {
+                throw new IOException("Не задан vkbot.callbackSecret: без него Callback API можно слушать только на 127.0.0.1, а не на " + HOST);
+            }
+            logger.warn("Не задан vkbot.callbackSecret: события принимаются без проверки, только с {}", HOST);
+        }
+        server = HttpServer.create(address, 0);
+        server.createContext(PATH, CallbackServer::handle);
+        AtomicInteger threadNumber = new AtomicInteger();
+        server.setExecutor(Executors.newFixedThreadPool(THREADS, r -> {
+            Thread thread = new Thread(r, "callback-http-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+        logger.info("Callback API принимает события на http://{}:{}{}", HOST, PORT, PATH);
+    }
+
+    /**
+     * Блокирует вызывающий поток до {@link #stop()}.
+     */
+    public static void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+
+    public static synchronized void stop() {
+        if (server != null) {
+            server.stop(1);
+            server = null;
+        }
+        stopped.countDown();
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        long started = System.nanoTime();
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "method not allowed");
+                return;
+            }
+
+            JsonObject update;
+            String type;
+            try (InputStreamReader body = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+                JsonElement parsed = JsonParser.parseReader(body);
+                if (!parsed.isJsonObject() || !isString(parsed.getAsJsonObject().get("type"))) {
+                    respond(exchange, 400, "bad request");
+                    return;
+                }
+                update = parsed.getAsJsonObject();
+                type = update.get("type").getAsString();
+            } catch (RuntimeException e) {
+                respond(exchange, 400, "bad request");
+                return;
+            }
+
+            if (!isAuthentic(update)) {
+                Metrics.increment("vkbot_callback_rejected_total");
+                respond(exchange, 403, "forbidden");
+                return;
+            }
+
+            Metrics.increment("vkbot_callback_events_total{type=\""
+                    + (KNOWN_TYPES.contains(type) ? type : "other") + "\"}");
+            if ("confirmation".equals(type)) {
+                respond(exchange, 200, CONFIRMATION);
+                return;
+            }
+
+            // Сначала подтверждаем получение, потом обрабатываем
+            respond(exchange, 200, "ok");
+            Metrics.recordSince("vkbot_callback_ack_seconds", started);
+            VkBot.processUpdate(update);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static boolean isAuthentic(JsonObject update) {
+        JsonElement groupId = update.get("group_id");
+        if (groupId == null || !groupId.isJsonPrimitive() || !groupId.getAsJsonPrimitive().isNumber()
+                || groupId.getAsLong() != Connection.GROUP_ID) {
+            return false;
+        }
+        if (SECRET.isEmpty()) {
+            return true;
+        }
+        JsonElement secret = update.get("secret");
+        return isString(secret) && MessageDigest.isEqual(SECRET.getBytes(StandardCharsets.UTF_8),
+                secret.getAsString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean isString(JsonElement element) {
+        return element != null && element.isJsonPrimitive() && element.getAsJsonPrimitive().isString();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
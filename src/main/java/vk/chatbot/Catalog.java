@@ -0,0 +1,125 @@
+package vk.chatbot;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Неизменяемая версия каталога: список проектов, построенный по нему
+ * поисковый индекс и хэши содержимого по URL для сравнения версий.
+ * Публикуется целиком одной ссылкой, поэтому читатели никогда не видят
+ * наполовину собранный каталог.
+ */
+public final class Catalog {
+    private final List<ProjectInfo> projects;
+    private final SearchIndex index;
+    private final Map<String, Long> contentHashes;
+    private final long version;
+
+    private Catalog(List<ProjectInfo> projects, long version) {
+        this.index = SearchIndex.build(projects);
+        this.projects = index.getProjects();
+        this.version = version;
+        this.contentHashes = new HashMap<>(projects.size() * 2);
+        for (ProjectInfo project : this.projects) {
+            contentHashes.put(project.getUrl(), contentHash(project));
+        }
+    }
+
+    public static Catalog empty() {
+        return new Catalog(Collections.emptyList(), 0);
+    }
+
+    public static Catalog of(List<ProjectInfo> projects, long version) {
+        return new Catalog(projects, version);
+    }
+
+    public List<ProjectInfo> getProjects() {
+        return projects;
+    }
+
+    public SearchIndex getIndex() {
+        return index;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return projects.size();
+    }
+
+    /**
+     * Что изменилось в этом каталоге относительно {@code older}: проекты
+     * сопоставляются по URL, изменения содержимого — по хэшу.
+     */
+    public Diff diffFrom(Catalog older) {
+        List<ProjectInfo> added = new ArrayList<>();
+        List<ProjectInfo> changed = new ArrayList<>();
+        List<ProjectInfo> removed = new ArrayList<>();
+
+        for (ProjectInfo project : projects) {
+            Long oldHash = older.contentHashes.get(project.getUrl());
+            if (oldHash == null) {
+                added.add(project);
+            } else if (oldHash != contentHashes.get(project.getUrl()).longValue()) {
+                changed.add(project);
+            }
+        }
+        for (ProjectInfo project : older.projects) {
+            if (!contentHashes.containsKey(project.getUrl())) {
+                removed.add(project);
+            }
+        }
+        return new Diff(added, changed, removed);
+    }
+
+    // FNV-1a по названию и описанию
+    static long contentHash(ProjectInfo project) {
+        long hash = 0xcbf29ce484222325L;
+        for (String part : new String[]{project.getTitle(), "\u0000", project.getDescription()}) {
+            for (byte b : (part == null ? "" : part).getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b & 0xff;
+                hash *= 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+
+    public static final class Diff {
+        private final List<ProjectInfo> added;
+        private final List<ProjectInfo> changed;
+        private final List<ProjectInfo> removed;
+
+        Diff(List<ProjectInfo> added, List<ProjectInfo> changed, List<ProjectInfo> removed) {
+            this.added = added;
+            this.changed = changed;
+            this.removed = removed;
+        }
+
+        public List<ProjectInfo> getAdded() {
+            return added;
+        }
+
+        public List<ProjectInfo> getChanged() {
+            return changed;
+        }
+
+        public List<ProjectInfo> getRemoved() {
+            return removed;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("добавлено %d, изменено %d, удалено %d", added.size(), changed.size(), removed.size());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package vk.chatbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Держит текущую версию каталога и периодически перечитывает сайт.
+ * Новая версия публикуется атомарной заменой ссылки; если сайт не
+ * изменился, прежняя версия остаётся на месте. Плановые обновления не
+ * перекрываются: {@code scheduleWithFixedDelay} запускает следующее только
+ * после окончания предыдущего, а результат обновления, во время которого
+ * каталог заменили (например, через {@link #publish}), отбрасывается
+ * при сравнении со снятой версией.
+ */
+public class CatalogRefresher {
+    private static final Logger logger = LoggerFactory.getLogger(CatalogRefresher.class);
+
+    private final AtomicReference<Catalog> current = new AtomicReference<>(Catalog.empty());
+    private final Supplier<List<ProjectInfo>> source;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "catalog-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CatalogRefresher(Supplier<List<ProjectInfo>> source) {
+        this.source = source;
+    }
+
+    public Catalog current() {
+        return current.get();
+    }
+
+    /**
+     * Публикует готовый список (например, из снимка на диске).
+     */
+    public void publish(List<ProjectInfo> projects) {
+        current.updateAndGet(previous -> Catalog.of(projects, previous.getVersion() + 1));
+    }
+
+    public void schedule(long initialDelay, long period, TimeUnit unit) {
+        scheduler.scheduleWithFixedDelay(this::refreshSafely, initialDelay, period, unit);
+    }
+
+    /**
+     * Перечитывает каталог и возвращает изменения относительно текущей
+     * версии или {@code null}, если источник не вернул проектов.
+     */
+    public Catalog.Diff refresh() {
+        List<ProjectInfo> projects = source.get();
+        if (projects.isEmpty()) {
+            logger.warn("Обновление каталога не вернуло проектов, оставляем текущую версию");
+            return null;
+        }
+
+        Catalog previous = current.get();
+        Catalog next = Catalog.of(projects, previous.getVersion() + 1);
+        Catalog.Diff diff = next.diffFrom(previous);
+        if (diff.isEmpty()) {
+            logger.info("Каталог не изменился ({} проектов)", previous.size());
+            return diff;
+        }
+
+        if (!current.compareAndSet(previous, next)) {
+            logger.warn("Каталог был заменён во время обновления, результат отброшен");
+            return null;
+        }
+        logger.info("Каталог обновлён до версии {}: {}", next.getVersion(), diff);
+        for (ProjectInfo project : diff.getAdded()) {
+            logger.info("  + {} ({})", project.getTitle(), project.getUrl());
+        }
+        for (ProjectInfo project : diff.getChanged()) {
+            logger.info("  * {} ({})", project.getTitle(), project.getUrl());
+        }
+        for (ProjectInfo project : diff.getRemoved()) {
+            logger.info("  - {} ({})", project.getTitle(), project.getUrl());
+        }
+
+        try {
+            CatalogSnapshot.save(next.getProjects(), CatalogSnapshot.DEFAULT_PATH);
+        } catch (IOException e) {
+            logger.warn("Не удалось сохранить снимок каталога", e);
+        }
+        return diff;
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void refreshSafely() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            logger.error("Ошибка обновления каталога", e);
+        }
+    }
+}
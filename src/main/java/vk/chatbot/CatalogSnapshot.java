@@ -0,0 +1,95 @@
+package vk.chatbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Снимок каталога на диске для быстрого старта. Формат:
+ * {@code "VKCS"}, версия, число проектов, затем для каждого проекта три
+ * строки UTF-8 (длина + байты): название, описание, URL. Читается через
+ * отображение файла в память, пишется во временный файл с атомарной
+ * заменой, чтобы при сбое не остался наполовину записанный снимок.
+ * Поисковый индекс не сохраняется: он строится из списка за миллисекунды.
+ */
+public class CatalogSnapshot {
+    private static final Logger logger = LoggerFactory.getLogger(CatalogSnapshot.class);
+    private static final int MAGIC = 0x564B4353; // "VKCS"
+    private static final int VERSION = 1;
+    static final Path DEFAULT_PATH = Paths.get(System.getProperty("vkbot.snapshotPath", "catalog.snapshot"));
+
+    public static void save(List<ProjectInfo> projects, Path path) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (OutputStream file = Files.newOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(projects.size());
+            for (ProjectInfo project : projects) {
+                writeString(out, project.getTitle());
+                writeString(out, project.getDescription());
+                writeString(out, project.getUrl());
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Снимок каталога сохранён: {} ({} проектов)", path, projects.size());
+    }
+
+    /**
+     * Загружает снимок или возвращает {@code null}, если файла нет либо он
+     * записан другой версией формата.
+     */
+    public static List<ProjectInfo> load(Path path) {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 12 || buffer.getInt() != MAGIC) {
+                logger.warn("Файл {} не является снимком каталога", path);
+                return null;
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                logger.warn("Снимок каталога {} версии {}, ожидается {}", path, version, VERSION);
+                return null;
+            }
+
+            int count = buffer.getInt();
+            List<ProjectInfo> projects = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                projects.add(new ProjectInfo(readString(buffer), readString(buffer), readString(buffer)));
+            }
+            return projects;
+        } catch (Exception e) {
+            logger.warn("Не удалось прочитать снимок каталога {}: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,244 @@
+package vk.chatbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Таблица команд бота. Префиксы и синонимы команд хранятся в префиксном
+ * дереве без учёта регистра; текст сообщения проходится по дереву один
+ * раз, и побеждает самое длинное совпадение. Каждая команда выполняется
+ * либо прямо в потоке диспетчера ({@link Policy#INLINE}), либо в пуле
+ * ({@link Policy#ASYNC}) — для всего, что ждёт сеть или ищет по каталогу.
+ * Команда, которая сама только строит цепочку future
+ * ({@link Policy#CHAINED}), тоже запускается в потоке диспетчера, но её
+ * время в {@code vkbot_command_seconds} считается до завершения цепочки.
+ * <p>
+ * Команды регистрируются до начала приёма сообщений.
+ */
+public class CommandRouter {
+    private static final Logger logger = LoggerFactory.getLogger(CommandRouter.class);
+
+    public enum Policy {
+        INLINE,
+        ASYNC,
+        CHAINED
+    }
+
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * @param argument текст после совпавшего префикса без крайних
+         *                 пробелов; для команды по умолчанию — весь текст
+         */
+        void handle(MessageEvent event, String argument) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface ChainedHandler {
+        /**
+         * @return этап, с завершением которого команда выполнена
+         */
+        CompletionStage<?> handle(MessageEvent event, String argument) throws Exception;
+    }
+
+    public static final class Command {
+        private final String name;
+        private final Policy policy;
+        private final ChainedHandler handler;
+        private final String metricName;
+
+        Command(String name, Policy policy, Handler handler) {
+            this(name, policy, (ChainedHandler) (event, argument) -> {
+                handler.handle(event, argument);
+                return null;
+            });
+        }
+
+        Command(String name, Policy policy, ChainedHandler handler) {
+            this.name = name;
+            this.policy = policy;
+            this.handler = handler;
+            this.metricName = "vkbot_command_seconds{command=\"" + name + "\"}";
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Policy getPolicy() {
+            return policy;
+        }
+    }
+
+    public static final class Match {
+        private final Command command;
+        private final String argument;
+
+        Match(Command command, String argument) {
+            this.command = command;
+            this.argument = argument;
+        }
+
+        public Command getCommand() {
+            return command;
+        }
+
+        public String getArgument() {
+            return argument;
+        }
+    }
+
+    private static final class Node {
+        final Map<Character, Node> children = new HashMap<>();
+        Command prefix;
+        Command exact;
+    }
+
+    private final Node root = new Node();
+    private final Executor asyncExecutor;
+    private Command fallback;
+
+    public CommandRouter(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    /**
+     * Команда для сообщений, которые начинаются с одного из {@code prefixes}.
+     */
+    public CommandRouter onPrefix(String name, Policy policy, Handler handler, String... prefixes) {
+        Command command = new Command(name, policy, handler);
+        for (String prefix : prefixes) {
+            node(prefix).prefix = command;
+        }
+        return this;
+    }
+
+    /**
+     * Команда для сообщений, которые целиком совпадают с одним из {@code aliases}.
+     */
+    public CommandRouter onExact(String name, Policy policy, Handler handler, String... aliases) {
+        Command command = new Command(name, policy, handler);
+        for (String alias : aliases) {
+            node(alias).exact = command;
+        }
+        return this;
+    }
+
+    /**
+     * То же для команды с политикой {@link Policy#CHAINED}.
+     */
+    public CommandRouter onExact(String name, ChainedHandler handler, String... aliases) {
+        Command command = new Command(name, Policy.CHAINED, handler);
+        for (String alias : aliases) {
+            node(alias).exact = command;
+        }
+        return this;
+    }
+
+    /**
+     * Команда для всех остальных сообщений.
+     */
+    public CommandRouter otherwise(String name, Policy policy, Handler handler) {
+        this.fallback = new Command(name, policy, handler);
+        return this;
+    }
+
+    /**
+     * Находит команду для уже обрезанного текста, ничего не выполняя.
+     */
+    public Match match(String text) {
+        Node node = root;
+        Command best = null;
+        int bestLength = 0;
+        int i = 0;
+        while (i < text.length()) {
+            node = node.children.get(Character.toLowerCase(text.charAt(i)));
+            if (node == null) {
+                break;
+            }
+            i++;
+            if (node.prefix != null) {
+                best = node.prefix;
+                bestLength = i;
+            }
+        }
+        if (node != null && i == text.length() && node.exact != null) {
+            return new Match(node.exact, "");
+        }
+        if (best != null) {
+            return new Match(best, text.substring(bestLength).trim());
+        }
+        return fallback == null ? null : new Match(fallback, text);
+    }
+
+    /**
+     * Выполняет команду по её политике. Возвращённый future завершается
+     * именем команды (или {@code null}, если ничего не подошло), когда
+     * команда выполнена: для {@link Policy#ASYNC} и {@link Policy#CHAINED}
+     * это позже возврата из метода. Если команда упала, future завершается
+     * её исключением; оно уже записано в журнал.
+     */
+    public CompletableFuture<String> dispatch(MessageEvent event, String text) {
+        Match match = match(text);
+        if (match == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Command command = match.command;
+        long started = System.nanoTime();
+        CompletableFuture<String> done = new CompletableFuture<>();
+        if (command.policy != Policy.ASYNC) {
+            run(command, event, match.argument, started, done);
+        } else {
+            try {
+                // Время команды включает ожидание в очереди пула
+                asyncExecutor.execute(() -> run(command, event, match.argument, started, done));
+            } catch (RejectedExecutionException e) {
+                logger.warn("Команда {} отклонена: пул остановлен", command.name);
+                done.completeExceptionally(e);
+            }
+        }
+        return done;
+    }
+
+    private static void run(Command command, MessageEvent event, String argument, long started,
+                            CompletableFuture<String> done) {
+        CompletionStage<?> stage;
+        try {
+            stage = command.handler.handle(event, argument);
+        } catch (Exception e) {
+            logger.error("Ошибка выполнения команды {}", command.name, e);
+            Metrics.recordSince(command.metricName, started);
+            done.completeExceptionally(e);
+            return;
+        }
+        if (stage == null) {
+            Metrics.recordSince(command.metricName, started);
+            done.complete(command.name);
+            return;
+        }
+        stage.whenComplete((result, error) -> {
+            Metrics.recordSince(command.metricName, started);
+            if (error != null) {
+                logger.error("Ошибка выполнения команды {}", command.name, error);
+                done.completeExceptionally(error);
+            } else {
+                done.complete(command.name);
+            }
+        });
+    }
+
+    private Node node(String key) {
+        Node node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.children.computeIfAbsent(Character.toLowerCase(key.charAt(i)), c -> new Node());
+        }
+        return node;
+    }
+}
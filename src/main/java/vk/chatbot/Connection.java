@@ -1,124 +1,94 @@
 package vk.chatbot;
 
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
-import okhttp3.logging.HttpLoggingInterceptor;
+import okhttp3.Interceptor;
 
 import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
 public class Connection {
-    protected static final String ACCESS_TOKEN = "vk1.a.VTs35iuWFmwtrm6FCpJ4TyvdCJLyGw3EW2_7APUobOSbbj7D69UnQMG65wwQkOZm5IhMs9H-j3ZbKeAjZFda3cljQHgYKk96JjECjv9F6jErHbBwU1D6Mrdu_zrqaShG2EI04ozJJPRPdQkiVMNbGCkVLF_pXlRd8TyKCBmoQ3FaAdNGdNAK21KCQxtshDwaGfnNn294TrbskVeX42TwkQ";
-    protected static final int GROUP_ID = 231879059;
+    // Для нагрузочных тестов все три можно направить на локальный симулятор:
+    // -Dvkbot.apiUrl=http://127.0.0.1:8780/method/ -Dvkbot.accessToken=... -Dvkbot.groupId=...
+    protected static final String ACCESS_TOKEN = System.getProperty("vkbot.accessToken", "vk1.a.VTs35iuWFmwtrm6FCpJ4TyvdCJLyGw3EW2_7APUobOSbbj7D69UnQMG65wwQkOZm5IhMs9H-j3ZbKeAjZFda3cljQHgYKk96JjECjv9F6jErHbBwU1D6Mrdu_zrqaShG2EI04ozJJPRPdQkiVMNbGCkVLF_pXlRd8TyKCBmoQ3FaAdNGdNAK21KCQxtshDwaGfnNn294TrbskVeX42TwkQ");
+    protected static final int GROUP_ID = Integer.getInteger("vkbot.groupId", 231879059);
     protected static final String VK_API_VERSION = "5.199";
-
+    protected static final String API_URL = withTrailingSlash(System.getProperty("vkbot.apiUrl", "https://api.vk.com/method/"));
+
+    // Не больше vkbot.maxOutbound одновременных запросов, из них к одному
+    // хосту — vkbot.maxRequestsPerHost: обработчиков в режиме виртуальных
+    // потоков могут быть тысячи, а соединений к api.vk.com — нет
+    private static final int MAX_OUTBOUND_CALLS = Integer.getInteger("vkbot.maxOutbound", 32);
+    private static final int MAX_CALLS_PER_HOST = Integer.getInteger("vkbot.maxRequestsPerHost", 16);
+    // При ровном потоке вызовов к api.vk.com соединения не должны закрываться
+    // между ними: в пуле держим столько простаивающих, сколько разрешено
+    // одновременно к хосту, и закрываем их чуть раньше, чем это сделает сервер
+    private static final int MAX_IDLE_CONNECTIONS = Integer.getInteger("vkbot.apiIdleConnections", MAX_CALLS_PER_HOST);
+    private static final long KEEP_ALIVE_SEC = Long.getLong("vkbot.apiKeepAliveSec", 55);
+
+    // Короткие вызовы API и загрузка каталога
     protected static final OkHttpClient client = new OkHttpClient.Builder()
-            .connectTimeout(60, TimeUnit.SECONDS)
-            .readTimeout(120, TimeUnit.SECONDS)
-            .writeTimeout(60, TimeUnit.SECONDS)
-            .addInterceptor(new HttpLoggingInterceptor(message -> System.out.println("NET: " + message)))
+            .connectTimeout(10, TimeUnit.SECONDS)
+            .readTimeout(30, TimeUnit.SECONDS)
+            .writeTimeout(30, TimeUnit.SECONDS)
+            .dispatcher(apiDispatcher())
+            .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_SEC, TimeUnit.SECONDS))
+            .addInterceptor(Connection::logCall)
             .build();
 
-    public static void startLongPoll() {
-        // SiteAnalyzer.setup(); // Удалить или реализовать этот метод, если нужен
-
-        while (true) {
-            try {
-                JsonObject serverData = getServerData();
-                String server = serverData.get("server").getAsString();
-                String key = serverData.get("key").getAsString();
-                String ts = serverData.get("ts").getAsString();
-
-                // Основной цикл Long Poll
-                while (true) {
-                    try {
-                        String url = String.format("%s?act=a_check&key=%s&ts=%s&wait=25",
-                                server, key, ts);
-
-                        Request request = new Request.Builder()
-                                .url(url)
-                                .build();
-
-                        try (Response response = client.newCall(request).execute()) {
-                            if (!response.isSuccessful()) {
-                                throw new IOException("HTTP error: " + response.code());
-                            }
-
-                            String json = response.body().string();
-                            JsonObject update = JsonParser.parseString(json).getAsJsonObject();
+    // Long Poll держит запрос до wait=25 секунд, поэтому свой пул соединений
+    // и таймаут чтения: он не занимает соединения коротких вызовов
+    static final OkHttpClient longPollClient = new OkHttpClient.Builder()
+            .connectTimeout(10, TimeUnit.SECONDS)
+            .readTimeout(40, TimeUnit.SECONDS)
+            .connectionPool(new ConnectionPool(2, 5, TimeUnit.MINUTES))
+            .addInterceptor(Connection::logCall)
+            .build();
 
-                            // Обработка ошибок Long Poll
-                            if (update.has("failed")) {
-                                handleLongPollError(update.get("failed").getAsInt());
-                                break;
-                            }
+    // Лимит VK для ключа сообщества — 20 запросов в секунду
+    static final ApiRateLimiter rateLimiter = new ApiRateLimiter(
+            Double.parseDouble(System.getProperty("vkbot.apiRps", "20")));
+    static final VkApiClient api = new VkApiClient(client, API_URL, ACCESS_TOKEN, VK_API_VERSION, rateLimiter);
 
-                            // Обновление TS
-                            ts = update.get("ts").getAsString();
+    public static void startLongPoll() {
+        // SiteAnalyzer.setup(); // Удалить или реализовать этот метод, если нужен
+        UpdateDispatcher.start();
 
-                            // Обработка сообщений
-                            if (update.has("updates")) {
-                                for (JsonElement element : update.getAsJsonArray("updates")) {
-                                    VkBot.processUpdate(element.getAsJsonObject());
-                                }
-                            }
-                        }
-                    } catch (IOException e) {
-                        System.err.println("Ошибка соединения: " + e.getMessage());
-                        sleep(5000);
-                        break;
-                    }
-                }
-            } catch (Exception e) {
-                System.err.println("Критическая ошибка: " + e.getMessage());
-                sleep(15000);
-            }
+        try {
+            new LongPollLoop(longPollClient, Connection::getServerData).run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    private static JsonObject getServerData() throws IOException {
-        String url = String.format(
-                "https://api.vk.com/method/groups.getLongPollServer?group_id=%d&access_token=%s&v=%s",
-                GROUP_ID, ACCESS_TOKEN, VK_API_VERSION
-        );
-
-        Request request = new Request.Builder().url(url).build();
-        try (Response response = client.newCall(request).execute()) {
-            String json = response.body().string();
-            JsonObject obj = JsonParser.parseString(json).getAsJsonObject();
-
-            if (obj.has("error")) {
-                throw new IOException("API error: " +
-                        obj.getAsJsonObject("error").get("error_msg").getAsString());
-            }
+    private static VkApiClient.LongPollServer getServerData() throws IOException {
+        return VkApiClient.await(api.getLongPollServer(GROUP_ID));
+    }
 
-            return obj.getAsJsonObject("response");
-        }
+    private static Dispatcher apiDispatcher() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_OUTBOUND_CALLS);
+        dispatcher.setMaxRequestsPerHost(MAX_CALLS_PER_HOST);
+        return dispatcher;
     }
 
-    private static void handleLongPollError(int errorCode) throws IOException {
-        switch (errorCode) {
-            case 1:
-                System.out.println("Long Poll: Нужно обновить TS");
-                break;
-            case 2:
-                throw new IOException("Long Poll: Нужен новый ключ");
-            case 3:
-                throw new IOException("Long Poll: Нужен новый сервер");
-            default:
-                throw new IOException("Long Poll: Неизвестная ошибка " + errorCode);
-        }
+    private static String withTrailingSlash(String url) {
+        return url.endsWith("/") ? url : url + "/";
     }
 
-    static void sleep(long millis) {
-        try {
-            Thread.sleep(millis);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+    // Ключ Long Poll и access_token маскируются в AsyncLog при записи
+    private static Response logCall(Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!AsyncLog.shouldLog("http")) {
+            return chain.proceed(request);
         }
+        long started = System.nanoTime();
+        Response response = chain.proceed(request);
+        AsyncLog.append("http", 0, null, System.nanoTime() - started,
+                request.method() + " " + request.url() + " -> " + response.code());
+        return response;
     }
 }
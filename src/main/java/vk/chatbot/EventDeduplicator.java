@@ -0,0 +1,226 @@
+package vk.chatbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Помнит {@code event_id} последних {@code vkbot.dedupCapacity} обработанных
+ * событий, чтобы повтор после переподключения Long Poll не обрабатывался
+ * второй раз. Обработка события начинается {@link #tryBegin} и кончается
+ * {@link #markHandled} или {@link #abandon}; пока она идёт, повтор тоже
+ * считается дублем.
+ * <p>
+ * С {@code -Dvkbot.dedupPath=<файл>} идентификаторы ещё и дописываются в
+ * файл и переживают перезапуск. Пишет отдельный поток пачками, с одним
+ * {@code flush} на пачку, так что обработчики событий не ждут диска; файл
+ * переписывается целиком, когда вырастает вдвое больше ёмкости.
+ * <p>
+ * Между экземплярами бота общего хранилища нет: их защищает
+ * детерминированный {@code random_id} (см. {@link MessageEvent#nextRandomId()}).
+ */
+public class EventDeduplicator {
+    private static final Logger logger = LoggerFactory.getLogger(EventDeduplicator.class);
+    // Конец очереди записи; сравнивается по ссылке
+    private static final String END_OF_QUEUE = new String("");
+
+    private final int capacity;
+    private final Map<String, Boolean> seen;
+    private final Set<String> inFlight = new HashSet<>();
+    private final Path file;
+    private final BlockingQueue<String> pending = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+    private volatile boolean closed;
+    // Только в потоке записи (и в конструкторе до его запуска)
+    private BufferedWriter writer;
+    private int linesInFile;
+
+    public EventDeduplicator(int capacity, Path file) {
+        this.capacity = capacity;
+        this.file = file;
+        this.seen = new LinkedHashMap<>(Math.min(capacity, 1024) * 2, 0.75f) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > EventDeduplicator.this.capacity;
+            }
+        };
+        if (file != null) {
+            load();
+        }
+        if (writer != null) {
+            writerThread = new Thread(this::runWriter, "event-dedup-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        } else {
+            writerThread = null;
+        }
+    }
+
+    public static EventDeduplicator fromProperties() {
+        String path = System.getProperty("vkbot.dedupPath");
+        return new EventDeduplicator(Integer.getInteger("vkbot.dedupCapacity", 10_000),
+                path == null ? null : Paths.get(path));
+    }
+
+    /**
+     * Начинает обработку события. {@code false}, если оно уже обработано
+     * или обрабатывается сейчас; события без {@code event_id} всегда новые.
+     */
+    public boolean tryBegin(String eventId) {
+        if (eventId == null) {
+            return true;
+        }
+        synchronized (seen) {
+            return !seen.containsKey(eventId) && inFlight.add(eventId);
+        }
+    }
+
+    /**
+     * Запоминает событие, ответы на которое уже переданы в
+     * {@link MessageDispatcher}.
+     */
+    public void markHandled(String eventId) {
+        if (eventId == null) {
+            return;
+        }
+        synchronized (seen) {
+            inFlight.remove(eventId);
+            if (seen.putIfAbsent(eventId, Boolean.TRUE) != null) {
+                return;
+            }
+        }
+        if (writerThread != null && !closed) {
+            pending.add(eventId);
+        }
+    }
+
+    /**
+     * Забывает начатое событие, обработка которого не удалась, чтобы его
+     * повтор обработался заново.
+     */
+    public void abandon(String eventId) {
+        if (eventId == null) {
+            return;
+        }
+        synchronized (seen) {
+            inFlight.remove(eventId);
+        }
+    }
+
+    public int size() {
+        synchronized (seen) {
+            return seen.size();
+        }
+    }
+
+    /**
+     * Дописывает в файл всё, что уже в очереди, и останавливает поток записи.
+     */
+    public void close() {
+        if (writerThread == null || closed) {
+            return;
+        }
+        closed = true;
+        pending.add(END_OF_QUEUE);
+        try {
+            writerThread.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void load() {
+        try {
+            if (Files.exists(file)) {
+                List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+                for (String line : lines) {
+                    if (!line.isEmpty()) {
+                        seen.put(line, Boolean.TRUE);
+                    }
+                }
+                logger.info("Загружено обработанных событий: {}", seen.size());
+            }
+            compact();
+        } catch (IOException e) {
+            logger.warn("Не удалось прочитать файл обработанных событий {}, дедупликация только в памяти", file, e);
+        }
+    }
+
+    private void runWriter() {
+        List<String> batch = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(pending.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            pending.drainTo(batch);
+            running = !batch.removeIf(eventId -> eventId == END_OF_QUEUE);
+            append(batch);
+            batch.clear();
+        }
+        closeWriter();
+    }
+
+    private void append(List<String> eventIds) {
+        if (writer == null || eventIds.isEmpty()) {
+            return;
+        }
+        try {
+            for (String eventId : eventIds) {
+                writer.write(eventId);
+                writer.newLine();
+            }
+            writer.flush();
+            linesInFile += eventIds.size();
+            if (linesInFile > capacity * 2) {
+                compact();
+            }
+        } catch (IOException e) {
+            logger.warn("Не удалось записать события в {}, дедупликация только в памяти", file, e);
+            closeWriter();
+        }
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                logger.warn("Не удалось закрыть файл обработанных событий", e);
+            }
+            writer = null;
+        }
+    }
+
+    // Переписывает файл текущим содержимым окна через временный файл
+    private void compact() throws IOException {
+        closeWriter();
+        List<String> snapshot;
+        synchronized (seen) {
+            snapshot = new ArrayList<>(seen.keySet());
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, snapshot, StandardCharsets.UTF_8);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        linesInFile = snapshot.size();
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,199 @@
+package vk.chatbot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Поиск терминов словаря с опечатками. Кандидаты отбираются по общим
+ * триграммам, затем каждый проверяется автоматом Левенштейна с
+ * ограничением на число правок (перестановка соседних букв, «pyhton»,
+ * считается одной правкой); автомат останавливается, как только все
+ * его состояния «умерли», поэтому непохожие слова отсеиваются за пару
+ * символов.
+ */
+public class FuzzyTermMatcher {
+    static final int MIN_FUZZY_LENGTH = 4;
+    private static final int MAX_PATTERN = 62;
+
+    private final String[] terms;
+    private final Map<String, int[]> trigrams;
+
+    public static final class Match {
+        private final String term;
+        private final int distance;
+
+        Match(String term, int distance) {
+            this.term = term;
+            this.distance = distance;
+        }
+
+        public String getTerm() {
+            return term;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+    }
+
+    public FuzzyTermMatcher(Collection<String> vocabulary) {
+        this.terms = vocabulary.toArray(new String[0]);
+        Map<String, List<Integer>> building = new HashMap<>();
+        for (int id = 0; id < terms.length; id++) {
+            if (terms[id].length() < MIN_FUZZY_LENGTH - 1) {
+                continue;
+            }
+            for (String trigram : trigramsOf(terms[id])) {
+                List<Integer> ids = building.computeIfAbsent(trigram, k -> new ArrayList<>());
+                if (ids.isEmpty() || ids.get(ids.size() - 1) != id) {
+                    ids.add(id);
+                }
+            }
+        }
+        this.trigrams = new HashMap<>(building.size() * 2);
+        for (Map.Entry<String, List<Integer>> entry : building.entrySet()) {
+            this.trigrams.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    /**
+     * Допустимое число правок: одна для коротких слов, две для длинных.
+     */
+    static int maxEdits(int length) {
+        if (length < MIN_FUZZY_LENGTH) {
+            return 0;
+        }
+        return length < 8 ? 1 : 2;
+    }
+
+    /**
+     * Термины словаря на расстоянии не больше {@link #maxEdits} от {@code query},
+     * от ближайших к дальним, не более {@code limit}.
+     */
+    public List<Match> find(String query, int limit) {
+        int maxEdits = maxEdits(query.length());
+        List<Match> matches = new ArrayList<>();
+        if (maxEdits == 0 || query.length() > MAX_PATTERN) {
+            return matches;
+        }
+
+        // Каждая правка портит не больше четырёх триграмм (перестановка — четыре)
+        List<String> queryTrigrams = trigramsOf(query);
+        int required = Math.max(1, queryTrigrams.size() - 4 * maxEdits);
+        Map<Integer, Integer> shared = new HashMap<>();
+        for (String trigram : queryTrigrams) {
+            int[] ids = trigrams.get(trigram);
+            if (ids != null) {
+                for (int id : ids) {
+                    shared.merge(id, 1, Integer::sum);
+                }
+            }
+        }
+
+        LevenshteinAutomaton automaton = null;
+        for (Map.Entry<Integer, Integer> entry : shared.entrySet()) {
+            String candidate = terms[entry.getKey()];
+            if (entry.getValue() < required || Math.abs(candidate.length() - query.length()) > maxEdits) {
+                continue;
+            }
+            if (automaton == null) {
+                automaton = new LevenshteinAutomaton(query, maxEdits);
+            }
+            int distance = automaton.distance(candidate);
+            if (distance >= 0) {
+                matches.add(new Match(candidate, distance));
+            }
+        }
+
+        matches.sort((a, b) -> a.distance != b.distance
+                ? Integer.compare(a.distance, b.distance)
+                : a.term.compareTo(b.term));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    private static List<String> trigramsOf(String term) {
+        String padded = "^" + term + "$";
+        List<String> result = new ArrayList<>(padded.length());
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            result.add(padded.substring(i, i + 3));
+        }
+        return result;
+    }
+
+    /**
+     * Недетерминированный автомат Левенштейна, моделируемый битовыми
+     * масками (по одной на число правок): бит i означает, что прочитанный
+     * префикс слова сопоставлен с первыми i символами образца. Кроме
+     * вставки, удаления и замены есть переход для перестановки двух
+     * соседних символов (расстояние Дамерау — Левенштейна без повторных
+     * правок одной подстроки).
+     */
+    static final class LevenshteinAutomaton {
+        private final int length;
+        private final int maxEdits;
+        private final long valid;
+        private final Map<Character, Long> masks = new HashMap<>();
+
+        LevenshteinAutomaton(String pattern, int maxEdits) {
+            this.length = pattern.length();
+            this.maxEdits = maxEdits;
+            this.valid = (1L << (length + 1)) - 1;
+            for (int i = 0; i < pattern.length(); i++) {
+                masks.merge(pattern.charAt(i), 1L << (i + 1), (a, b) -> a | b);
+            }
+        }
+
+        /**
+         * Расстояние до {@code word} или -1, если оно больше допустимого.
+         */
+        int distance(String word) {
+            long[] states = new long[maxEdits + 1];
+            // Состояния до предыдущего символа — для перестановки
+            long[] older = new long[maxEdits + 1];
+            long[] snapshot = new long[maxEdits + 1];
+            for (int e = 0; e <= maxEdits; e++) {
+                states[e] = (1L << (e + 1)) - 1;
+            }
+
+            long previousMask = 0;
+            for (int pos = 0; pos < word.length(); pos++) {
+                long mask = masks.getOrDefault(word.charAt(pos), 0L);
+                // Бит i: word[pos] == pattern[i - 2] и word[pos - 1] == pattern[i - 1]
+                long swapped = (mask << 1) & previousMask;
+                System.arraycopy(states, 0, snapshot, 0, states.length);
+                long previous = states[0];
+                states[0] = (previous << 1) & mask;
+                boolean alive = states[0] != 0;
+                for (int e = 1; e <= maxEdits; e++) {
+                    long current = states[e];
+                    states[e] = (((current << 1) & mask) // совпадение
+                            | previous                    // лишний символ в слове
+                            | (previous << 1)             // замена
+                            | (states[e - 1] << 1)        // пропущенный символ
+                            | ((older[e - 1] << 2) & swapped)) // перестановка
+                            & valid;
+                    previous = current;
+                    alive |= states[e] != 0;
+                }
+                long[] free = older;
+                older = snapshot;
+                snapshot = free;
+                previousMask = mask;
+                if (!alive) {
+                    return -1;
+                }
+            }
+
+            long accept = 1L << length;
+            for (int e = 0; e <= maxEdits; e++) {
+                if ((states[e] & accept) != 0) {
+                    return e;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package vk.chatbot;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Загрузка каталога проектов без браузера: страница education_projects →
+ * HTML iframe с витриной Tilda → JSON-лента товаров витрины, которая
+ * читается потоково через {@link JsonReader}. Результат тот же список
+ * {@link ProjectInfo}, что и у {@link SiteAnalyzer}.
+ */
+public class HttpCatalogFetcher {
+    private static final Logger logger = LoggerFactory.getLogger(HttpCatalogFetcher.class);
+    private static final String CATALOG_URL = System.getProperty(
+            "vkbot.catalogUrl", "https://education.vk.company/education_projects");
+    private static final String STORE_API_URL = System.getProperty(
+            "vkbot.storeApiUrl", "https://store.tildaapi.com/api/getproductslist/");
+    private static final int PAGE_SIZE = 36;
+    private static final int MAX_PAGES = 50;
+
+    private static final Pattern IFRAME = Pattern.compile("<iframe\\b[^>]*>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SRC = Pattern.compile("\\bsrc\\s*=\\s*\"([^\"]+)\"", Pattern.CASE_INSENSITIVE);
+    private static final Pattern STOREPART = Pattern.compile("\"storepart\"\\s*:\\s*\"?(\\d+)");
+    private static final Pattern RECID = Pattern.compile("t_store_init\\(\\s*'?(\\d+)");
+    private static final Pattern TAG = Pattern.compile("<[^>]+>");
+
+    private final OkHttpClient client;
+    private final String catalogUrl;
+    private final String storeApiUrl;
+
+    public HttpCatalogFetcher() {
+        this(Connection.client.newBuilder()
+                .readTimeout(30, TimeUnit.SECONDS)
+                .build(), CATALOG_URL, STORE_API_URL);
+    }
+
+    public HttpCatalogFetcher(OkHttpClient client, String catalogUrl, String storeApiUrl) {
+        this.client = client;
+        this.catalogUrl = catalogUrl;
+        this.storeApiUrl = storeApiUrl;
+    }
+
+    public List<ProjectInfo> parseAllProjects() {
+        long started = System.nanoTime();
+        try {
+            HttpUrl pageUrl = HttpUrl.get(catalogUrl);
+            String iframeUrl = findIframeUrl(pageUrl, fetchText(pageUrl));
+            String storeHtml = iframeUrl != null ? fetchText(HttpUrl.get(iframeUrl)) : "";
+
+            Matcher storepart = STOREPART.matcher(storeHtml);
+            Matcher recid = RECID.matcher(storeHtml);
+            if (!storepart.find() || !recid.find()) {
+                logger.warn("Не найдены параметры витрины Tilda (iframe: {})", iframeUrl);
+                return new ArrayList<>();
+            }
+
+            List<ProjectInfo> projects = fetchStoreProducts(storepart.group(1), recid.group(1));
+            logger.info("HTTP-загрузка каталога завершена за {} мс. Найдено проектов: {}",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), projects.size());
+            return projects;
+        } catch (Exception e) {
+            logger.error("Ошибка HTTP-загрузки каталога: ", e);
+            return new ArrayList<>();
+        }
+    }
+
+    private List<ProjectInfo> fetchStoreProducts(String storepartUid, String recid) throws IOException {
+        // Дубли по URL отбрасываются, как и в SiteAnalyzer
+        Map<String, ProjectInfo> projects = new LinkedHashMap<>();
+        int slice = 1;
+        for (int page = 0; page < MAX_PAGES && slice > 0; page++) {
+            HttpUrl url = HttpUrl.get(storeApiUrl).newBuilder()
+                    .addQueryParameter("storepartuid", storepartUid)
+                    .addQueryParameter("recid", recid)
+                    .addQueryParameter("getparts", "true")
+                    .addQueryParameter("slice", String.valueOf(slice))
+                    .addQueryParameter("size", String.valueOf(PAGE_SIZE))
+                    .build();
+
+            try (Response response = client.newCall(new Request.Builder().url(url).build()).execute()) {
+                if (!response.isSuccessful()) {
+                    throw new IOException("HTTP error: " + response.code());
+                }
+                int before = projects.size();
+                slice = readProductsPage(new JsonReader(response.body().charStream()), projects);
+                logger.info("Срез {}: найдено проектов: {}", page + 1, projects.size() - before);
+            }
+        }
+        return new ArrayList<>(projects.values());
+    }
+
+    /**
+     * Читает одну страницу ленты, добавляя товары в {@code projects}.
+     * Возвращает номер следующего среза или 0, если страниц больше нет.
+     */
+    static int readProductsPage(JsonReader reader, Map<String, ProjectInfo> projects) throws IOException {
+        int nextSlice = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("products".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    ProjectInfo project = readProduct(reader);
+                    if (project != null) {
+                        projects.putIfAbsent(project.getUrl(), project);
+                    }
+                }
+                reader.endArray();
+            } else if ("nextslice".equals(name) && reader.peek() != JsonToken.NULL) {
+                String value = reader.nextString();
+                nextSlice = value.isEmpty() ? 0 : Integer.parseInt(value);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return nextSlice;
+    }
+
+    private static ProjectInfo readProduct(JsonReader reader) throws IOException {
+        String title = null;
+        String description = "";
+        String url = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() != JsonToken.STRING) {
+                reader.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "title":
+                    title = cleanHtml(reader.nextString());
+                    break;
+                case "descr":
+                    description = cleanHtml(reader.nextString());
+                    break;
+                case "url":
+                    url = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (title == null || url == null || url.isEmpty()) {
+            return null;
+        }
+        return new ProjectInfo(title, description, url);
+    }
+
+    private String fetchText(HttpUrl url) throws IOException {
+        try (Response response = client.newCall(new Request.Builder().url(url).build()).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("HTTP error: " + response.code() + " (" + url + ")");
+            }
+            return response.body().string();
+        }
+    }
+
+    static String findIframeUrl(HttpUrl pageUrl, String html) {
+        Matcher iframe = IFRAME.matcher(html);
+        String fallback = null;
+        while (iframe.find()) {
+            Matcher src = SRC.matcher(iframe.group());
+            if (!src.find()) {
+                continue;
+            }
+            HttpUrl resolved = pageUrl.resolve(src.group(1).replace("&amp;", "&"));
+            if (resolved == null) {
+                continue;
+            }
+            if (iframe.group().contains("education_projects__Iframe")) {
+                return resolved.toString();
+            }
+            if (fallback == null) {
+                fallback = resolved.toString();
+            }
+        }
+        return fallback;
+    }
+
+    private static String cleanHtml(String text) {
+        return TAG.matcher(text).replaceAll(" ")
+                .replace("&nbsp;", " ")
+                .replace("&quot;", "\"")
+                .replace("&laquo;", "«")
+                .replace("&raquo;", "»")
+                .replace("&amp;", "&")
+                .replaceAll("\\s+", " ")
+                .trim();
+    }
+}
@@ -0,0 +1,160 @@
+package vk.chatbot;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма задержек в духе HdrHistogram: логарифмические диапазоны,
+ * каждый разбит на {@value #SUB_BUCKETS} линейных корзин, так что
+ * относительная погрешность квантилей не больше ~6%. Запись — три
+ * атомарных обновления (корзина, число и сумма) без аллокаций; блокировка
+ * берётся только при смене интервала окна.
+ * <p>
+ * Квантили можно считать по скользящему окну: оно разбито на интервалы,
+ * и самый старый обнуляется, когда начинается новый. Тогда за пределами
+ * окна старые наблюдения не сглаживают свежий всплеск хвоста. Число и
+ * сумма всегда накапливаются за всё время.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray[] slots;
+    private final long slotNanos;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private volatile long currentEpoch;
+
+    /**
+     * Квантили за всё время.
+     */
+    public LatencyHistogram() {
+        this(0, 1);
+    }
+
+    /**
+     * Квантили за последние {@code windowNanos} (с точностью до одного из
+     * {@code slots} интервалов).
+     */
+    public LatencyHistogram(long windowNanos, int slots) {
+        this.slots = new AtomicLongArray[slots];
+        for (int i = 0; i < slots; i++) {
+            this.slots[i] = new AtomicLongArray(BUCKETS);
+        }
+        this.slotNanos = windowNanos / slots;
+        this.currentEpoch = epoch(System.nanoTime());
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        currentSlot().incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Число наблюдений, по которым сейчас считаются квантили.
+     */
+    public long getWindowCount() {
+        long total = 0;
+        for (long bucket : snapshot()) {
+            total += bucket;
+        }
+        return total;
+    }
+
+    /**
+     * Оценка квантиля {@code q} (0..1): верхняя граница корзины, в которую
+     * он попал.
+     */
+    public long quantile(double q) {
+        long[] snapshot = snapshot();
+        long total = 0;
+        for (long bucket : snapshot) {
+            total += bucket;
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    private long[] snapshot() {
+        currentSlot();
+        long[] snapshot = new long[BUCKETS];
+        for (AtomicLongArray slot : slots) {
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] += slot.get(i);
+            }
+        }
+        return snapshot;
+    }
+
+    private AtomicLongArray currentSlot() {
+        if (slotNanos == 0) {
+            return slots[0];
+        }
+        long epoch = epoch(System.nanoTime());
+        if (epoch != currentEpoch) {
+            rotate(epoch);
+        }
+        return slots[(int) Math.floorMod(epoch, (long) slots.length)];
+    }
+
+    // Обнуляет интервалы, которые выпали из окна с прошлой записи
+    private synchronized void rotate(long epoch) {
+        if (epoch <= currentEpoch) {
+            return;
+        }
+        for (long e = Math.max(currentEpoch + 1, epoch - slots.length + 1); e <= epoch; e++) {
+            AtomicLongArray slot = slots[(int) Math.floorMod(e, (long) slots.length)];
+            for (int i = 0; i < BUCKETS; i++) {
+                slot.set(i, 0);
+            }
+        }
+        currentEpoch = epoch;
+    }
+
+    private long epoch(long nanos) {
+        return slotNanos == 0 ? 0 : Math.floorDiv(nanos, slotNanos);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = index % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+}
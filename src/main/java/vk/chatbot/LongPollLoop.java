@@ -0,0 +1,190 @@
+package vk.chatbot;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Цикл Bots Long Poll с восстановлением после сбоев. Последний {@code ts}
+ * сохраняется между обновлениями ключа, чтобы не терять события:
+ * <ul>
+ *     <li>{@code failed=1} — продолжаем с {@code ts} из ответа (часть
+ *     истории потеряна, это учитывается как разрыв);</li>
+ *     <li>{@code failed=2} — берём новый ключ, но продолжаем со своего
+ *     {@code ts};</li>
+ *     <li>{@code failed=3} — новый ключ и {@code ts} от сервера (разрыв);</li>
+ *     <li>сетевые ошибки — повтор с тем же {@code ts}.</li>
+ * </ul>
+ * Повторы идут с экспоненциальной задержкой со случайным разбросом: от
+ * {@code vkbot.longPollBackoffMs} (по умолчанию 100 мс) до
+ * {@code vkbot.longPollMaxBackoffMs} (10 с). Время от первой ошибки до
+ * первого успешного ответа пишется в {@code vkbot_longpoll_recovery_seconds}.
+ */
+public class LongPollLoop {
+    private static final Logger logger = LoggerFactory.getLogger(LongPollLoop.class);
+    private static final long BASE_BACKOFF_MS = Long.getLong("vkbot.longPollBackoffMs", 100);
+    private static final long MAX_BACKOFF_MS = Long.getLong("vkbot.longPollMaxBackoffMs", 10_000);
+    private static final int WAIT_SECONDS = 25;
+
+    /**
+     * Источник адреса сервера, обычно {@code groups.getLongPollServer}.
+     */
+    @FunctionalInterface
+    public interface ServerSource {
+        VkApiClient.LongPollServer fetch() throws IOException;
+    }
+
+    private enum State {
+        CONNECT,
+        POLL
+    }
+
+    private final OkHttpClient client;
+    private final ServerSource source;
+
+    private State state = State.CONNECT;
+    private String server;
+    private String key;
+    private String ts;
+    // Следующее подключение должно взять ts сервера, а не свой
+    private boolean resetTs = true;
+    private int failures;
+    private long outageStarted;
+
+    public LongPollLoop(OkHttpClient client, ServerSource source) {
+        this.client = client;
+        this.source = source;
+    }
+
+    /**
+     * Работает, пока поток не прерван.
+     */
+    public void run() throws InterruptedException {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                if (state == State.CONNECT) {
+                    connect();
+                } else {
+                    poll();
+                }
+            } catch (IOException | RuntimeException e) {
+                onFailure(e);
+            }
+        }
+        throw new InterruptedException();
+    }
+
+    private void connect() throws IOException {
+        VkApiClient.LongPollServer data = source.fetch();
+        server = data.getServer();
+        key = data.getKey();
+        String serverTs = data.getTs();
+        if (resetTs || ts == null) {
+            recordGap(ts, serverTs, "new_server");
+            ts = serverTs;
+            resetTs = false;
+        }
+        state = State.POLL;
+        logger.info("Long Poll: подключение к {}, ts={}", server, ts);
+    }
+
+    private void poll() throws IOException, InterruptedException {
+        Request request = new Request.Builder()
+                .url(server + "?act=a_check&key=" + key + "&ts=" + ts + "&wait=" + WAIT_SECONDS)
+                .build();
+
+        long started = System.nanoTime();
+        LongPollParser.Result update;
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("HTTP error: " + response.code());
+            }
+            update = LongPollParser.parse(response.body().charStream());
+        }
+        Metrics.recordSince("vkbot_longpoll_roundtrip_seconds", started);
+
+        switch (update.getFailed()) {
+            case 0:
+                break;
+            case 1:
+                // История частично потеряна: продолжаем с ts из ответа
+                Metrics.increment("vkbot_longpoll_failed_total{code=\"1\"}");
+                recordGap(ts, update.getTs(), "history");
+                ts = update.getTs();
+                onSuccess();
+                return;
+            case 2:
+                Metrics.increment("vkbot_longpoll_failed_total{code=\"2\"}");
+                logger.info("Long Poll: истёк ключ, запрашиваем новый с ts={}", ts);
+                state = State.CONNECT;
+                return;
+            case 3:
+                Metrics.increment("vkbot_longpoll_failed_total{code=\"3\"}");
+                logger.warn("Long Poll: информация утрачена, запрашиваем новый ключ и ts");
+                resetTs = true;
+                state = State.CONNECT;
+                return;
+            default:
+                throw new IOException("Long Poll: неизвестная ошибка " + update.getFailed());
+        }
+
+        onSuccess();
+        Metrics.recordValue("vkbot_longpoll_batch_updates", update.getEvents().size());
+        if (update.getTs() != null) {
+            ts = update.getTs();
+        }
+        for (MessageEvent event : update.getEvents()) {
+            UpdateDispatcher.submit(event);
+        }
+    }
+
+    private void onSuccess() {
+        if (failures > 0) {
+            Metrics.recordSince("vkbot_longpoll_recovery_seconds", outageStarted);
+            logger.info("Long Poll: соединение восстановлено за {} мс после {} ошибок",
+                    (System.nanoTime() - outageStarted) / 1_000_000, failures);
+            failures = 0;
+        }
+    }
+
+    private void onFailure(Exception e) throws InterruptedException {
+        if (failures == 0) {
+            outageStarted = System.nanoTime();
+        }
+        failures++;
+        Metrics.increment("vkbot_longpoll_errors_total");
+        // Состояние не меняется: повторяем тот же шаг с тем же ts. Если за
+        // время сбоя ключ истёк, сервер ответит failed=2
+        long delay = backoffMillis(failures);
+        logger.warn("Long Poll: {} (ошибка {} подряд), повтор через {} мс", e.getMessage(), failures, delay);
+        Thread.sleep(delay);
+    }
+
+    // Экспоненциальная задержка, случайная в пределах [cap/2, cap]
+    static long backoffMillis(int failures) {
+        long cap = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(failures - 1, 20));
+        return cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+    }
+
+    private static void recordGap(String from, String to, String reason) {
+        if (from == null || to == null || from.equals(to)) {
+            return;
+        }
+        Metrics.increment("vkbot_longpoll_gaps_total{reason=\"" + reason + "\"}");
+        logger.warn("Long Poll: разрыв истории ({}), ts {} -> {}", reason, from, to);
+        try {
+            // ts растёт на единицу с каждым событием
+            long lost = Long.parseLong(to) - Long.parseLong(from);
+            if (lost > 0) {
+                Metrics.add("vkbot_longpoll_gap_events_total", lost);
+            }
+        } catch (NumberFormatException e) {
+            // Нечисловой ts: размер разрыва неизвестен
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package vk.chatbot;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Потоковый разбор ответа Long Poll через {@link JsonReader}: без
+ * промежуточной строки и дерева {@code JsonObject}. Из ответа берутся
+ * только {@code ts}, {@code failed} и {@code event_id}, {@code peer_id},
+ * {@code text} событий {@code message_new}, остальное пропускается.
+ */
+public class LongPollParser {
+
+    public static final class Result {
+        private final String ts;
+        private final int failed;
+        private final List<MessageEvent> events;
+
+        Result(String ts, int failed, List<MessageEvent> events) {
+            this.ts = ts;
+            this.failed = failed;
+            this.events = events;
+        }
+
+        public String getTs() {
+            return ts;
+        }
+
+        // 0, если ошибки нет
+        public int getFailed() {
+            return failed;
+        }
+
+        public List<MessageEvent> getEvents() {
+            return events;
+        }
+    }
+
+    public static Result parse(Reader source) throws IOException {
+        JsonReader reader = new JsonReader(source);
+        String ts = null;
+        int failed = 0;
+        List<MessageEvent> events = Collections.emptyList();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "ts":
+                    ts = reader.nextString();
+                    break;
+                case "failed":
+                    failed = reader.nextInt();
+                    break;
+                case "updates":
+                    events = readUpdates(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Result(ts, failed, events);
+    }
+
+    private static List<MessageEvent> readUpdates(JsonReader reader) throws IOException {
+        List<MessageEvent> events = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            MessageEvent event = readUpdate(reader);
+            if (event != null) {
+                events.add(event);
+            }
+        }
+        reader.endArray();
+        return events;
+    }
+
+    static MessageEvent readUpdate(JsonReader reader) throws IOException {
+        String type = null;
+        String eventId = null;
+        MessageEvent message = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("type".equals(name)) {
+                type = reader.nextString();
+            } else if ("event_id".equals(name)) {
+                eventId = reader.nextString();
+            } else if ("object".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                message = readObject(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (!"message_new".equals(type) || message == null) {
+            return null;
+        }
+        // event_id может идти как до, так и после object
+        return new MessageEvent(eventId, message.getPeerId(), message.getText());
+    }
+
+    private static MessageEvent readObject(JsonReader reader) throws IOException {
+        MessageEvent message = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("message".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                message = readMessage(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return message;
+    }
+
+    private static MessageEvent readMessage(JsonReader reader) throws IOException {
+        int peerId = 0;
+        String text = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("peer_id".equals(name)) {
+                peerId = reader.nextInt();
+            } else if ("text".equals(name)) {
+                text = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new MessageEvent(peerId, text);
+    }
+}
@@ -0,0 +1,316 @@
+package vk.chatbot;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пакетная отправка сообщений через метод VK {@code execute}. Отправки
+ * копятся в очереди и уходят одним запросом, когда набралось
+ * {@link #MAX_BATCH} вызовов или истекло {@code vkbot.batchDelayMs} с
+ * момента первого из них. Каждый отправитель получает свой результат
+ * (id сообщения) или свою ошибку из общего ответа.
+ * <p>
+ * Пачки отправляются асинхронно и могут быть в пути одновременно;
+ * сообщения собеседника, чья пачка ещё не доставлена, ждут её, так что
+ * порядок ответов одному собеседнику сохраняется.
+ * <p>
+ * Временная ошибка отдельного вызова в {@code execute_errors}
+ * ({@link VkApiException#isRetryable()}) не отменяет отправку: сообщение с
+ * тем же {@code random_id} повторяется с задержкой до
+ * {@code vkbot.apiRetries} раз и уходит раньше следующих сообщений того же
+ * собеседника. Собеседник до повтора считается занятым.
+ */
+public class MessageDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(MessageDispatcher.class);
+    // Ограничение VK: не более 25 обращений к API внутри одного execute
+    static final int MAX_BATCH = 25;
+    private static final long BATCH_DELAY_MS = Long.getLong("vkbot.batchDelayMs", 50);
+    private static final int MAX_RETRIES = Integer.getInteger("vkbot.apiRetries", 5);
+    private static final long MAX_RETRY_DELAY_MS = 5000;
+
+    private static final BlockingQueue<PendingMessage> queue = new LinkedBlockingQueue<>();
+    // Будит отправителя, когда пачка доставлена и отложенные сообщения можно слать
+    private static final PendingMessage WAKE_UP = new PendingMessage(0, "", 0);
+    // Собеседники, чья пачка ещё в пути, и их отложенные сообщения: вторая
+    // пачка в полёте могла бы обогнать первую и перемешать ответы
+    private static final Map<Integer, Integer> peersInFlight = new HashMap<>();
+    private static final Deque<PendingMessage> held = new ArrayDeque<>();
+    // Группы повторов из одной пачки; отправитель ставит их в начало held
+    private static final BlockingQueue<List<PendingMessage>> retries = new LinkedBlockingQueue<>();
+    private static volatile int heldCount;
+    private static volatile boolean running = true;
+    private static final Thread flusher = startFlusher();
+
+    private static final class PendingMessage {
+        final int peerId;
+        final String text;
+        final int randomId;
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+        final long enqueuedAt = System.nanoTime();
+        int attempts;
+
+        PendingMessage(int peerId, String text, int randomId) {
+            this.peerId = peerId;
+            this.text = text;
+            this.randomId = randomId;
+        }
+    }
+
+    /**
+     * Ставит сообщение в очередь на отправку. Сообщения уходят в порядке
+     * вызова, поэтому ответы одному собеседнику не перемешиваются.
+     */
+    public static CompletableFuture<Integer> send(int peerId, String text) {
+        return send(peerId, text, ThreadLocalRandom.current().nextInt(1, Integer.MAX_VALUE));
+    }
+
+    /**
+     * То же с заданным {@code random_id}: VK не отправит повторно
+     * сообщение с уже использованным в этом диалоге {@code random_id}.
+     */
+    public static CompletableFuture<Integer> send(int peerId, String text, int randomId) {
+        PendingMessage message = new PendingMessage(peerId, text, randomId);
+        if (!running) {
+            message.result.completeExceptionally(new IllegalStateException("Отправка сообщений остановлена"));
+            return message.result;
+        }
+        queue.add(message);
+        return message.result;
+    }
+
+    public static int getPendingCount() {
+        return queue.size() + heldCount;
+    }
+
+    public static void shutdown() {
+        running = false;
+        flusher.interrupt();
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Thread startFlusher() {
+        Thread thread = new Thread(MessageDispatcher::runFlusher, "message-dispatcher");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void runFlusher() {
+        List<PendingMessage> batch = new ArrayList<>(MAX_BATCH);
+        while (running || !queue.isEmpty() || !held.isEmpty() || !retries.isEmpty() || hasPeersInFlight()) {
+            Set<Integer> blocked = new HashSet<>();
+            try {
+                takeRetries();
+                takeReleased(batch, blocked);
+                if (batch.isEmpty()) {
+                    PendingMessage first = queue.poll(1, TimeUnit.SECONDS);
+                    if (first == null || first == WAKE_UP) {
+                        continue;
+                    }
+                    accept(first, batch, blocked);
+                    if (batch.isEmpty()) {
+                        continue;
+                    }
+                }
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BATCH_DELAY_MS);
+                while (batch.size() < MAX_BATCH) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingMessage next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    if (next != WAKE_UP) {
+                        accept(next, batch, blocked);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Остановка: отправляем накопленное, цикл дособерёт очередь без ожидания
+            }
+            if (!batch.isEmpty()) {
+                flush(new ArrayList<>(batch));
+                batch.clear();
+            }
+            heldCount = held.size();
+        }
+    }
+
+    // Повтор идёт раньше всех отложенных сообщений своего собеседника:
+    // они попали в held, пока собеседник был занят
+    private static void takeRetries() {
+        List<PendingMessage> group;
+        while ((group = retries.poll()) != null) {
+            for (int i = group.size() - 1; i >= 0; i--) {
+                held.addFirst(group.get(i));
+            }
+            markInFlight(group, -1);
+        }
+    }
+
+    // Отложенные сообщения тех, чья предыдущая пачка уже доставлена
+    private static void takeReleased(List<PendingMessage> batch, Set<Integer> blocked) {
+        Iterator<PendingMessage> iterator = held.iterator();
+        while (iterator.hasNext() && batch.size() < MAX_BATCH) {
+            PendingMessage message = iterator.next();
+            if (blocked.contains(message.peerId) || isPeerInFlight(message.peerId)) {
+                blocked.add(message.peerId);
+                continue;
+            }
+            batch.add(message);
+            iterator.remove();
+        }
+    }
+
+    private static void accept(PendingMessage message, List<PendingMessage> batch, Set<Integer> blocked) {
+        if (blocked.contains(message.peerId) || isPeerInFlight(message.peerId)) {
+            blocked.add(message.peerId);
+            held.add(message);
+        } else {
+            batch.add(message);
+        }
+    }
+
+    private static void flush(List<PendingMessage> batch) {
+        long started = System.nanoTime();
+        Metrics.recordValue("vkbot_execute_batch_size", batch.size());
+        markInFlight(batch, 1);
+        Connection.api.execute(buildCode(batch), ApiRateLimiter.Priority.REPLY).whenComplete((json, error) -> {
+            List<PendingMessage> retry = new ArrayList<>();
+            try {
+                if (error == null) {
+                    completeBatch(batch, json, retry);
+                } else {
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    for (PendingMessage message : batch) {
+                        fail(message, cause);
+                    }
+                }
+            } catch (Exception e) {
+                retry.clear();
+                for (PendingMessage message : batch) {
+                    if (!message.result.isDone()) {
+                        fail(message, e);
+                    }
+                }
+            } finally {
+                Metrics.recordSince("vkbot_execute_seconds", started);
+                List<PendingMessage> finished = new ArrayList<>(batch);
+                finished.removeAll(retry);
+                markInFlight(finished, -1);
+                if (!retry.isEmpty()) {
+                    scheduleRetry(retry);
+                }
+                queue.add(WAKE_UP);
+            }
+        });
+    }
+
+    private static void scheduleRetry(List<PendingMessage> retry) {
+        int attempts = 0;
+        for (PendingMessage message : retry) {
+            attempts = Math.max(attempts, message.attempts);
+        }
+        long delay = Math.min(MAX_RETRY_DELAY_MS, 200L << Math.min(attempts - 1, 10));
+        delay += ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        logger.debug("Повтор {} сообщений через {} мс", retry.size(), delay);
+        CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(() -> {
+            retries.add(retry);
+            queue.add(WAKE_UP);
+        });
+    }
+
+    private static void markInFlight(List<PendingMessage> batch, int delta) {
+        synchronized (peersInFlight) {
+            for (PendingMessage message : batch) {
+                peersInFlight.merge(message.peerId, delta, (a, b) -> a + b == 0 ? null : a + b);
+            }
+        }
+    }
+
+    private static boolean isPeerInFlight(int peerId) {
+        synchronized (peersInFlight) {
+            return peersInFlight.containsKey(peerId);
+        }
+    }
+
+    private static boolean hasPeersInFlight() {
+        synchronized (peersInFlight) {
+            return !peersInFlight.isEmpty();
+        }
+    }
+
+    private static void fail(PendingMessage message, Throwable error) {
+        int code = error instanceof VkApiException ? ((VkApiException) error).getCode() : -1;
+        Metrics.increment("vkbot_messages_send_errors_total{code=\"" + code + "\"}");
+        message.result.completeExceptionally(error);
+    }
+
+    private static String buildCode(List<PendingMessage> batch) {
+        StringBuilder code = new StringBuilder("var r = [];\n");
+        for (PendingMessage message : batch) {
+            JsonObject params = new JsonObject();
+            params.addProperty("peer_id", message.peerId);
+            params.addProperty("message", message.text);
+            params.addProperty("random_id", message.randomId);
+            code.append("r.push(API.messages.send(").append(params).append("));\n");
+        }
+        return code.append("return r;").toString();
+    }
+
+    private static void completeBatch(List<PendingMessage> batch, JsonObject json, List<PendingMessage> retry) {
+        // Ошибки отдельных вызовов: на их месте в ответе стоит false,
+        // а описания идут по порядку в execute_errors
+        JsonArray results = json.getAsJsonArray("response");
+        JsonArray errors = json.has("execute_errors") ? json.getAsJsonArray("execute_errors") : new JsonArray();
+        int errorIndex = 0;
+
+        for (int i = 0; i < batch.size(); i++) {
+            PendingMessage message = batch.get(i);
+            JsonElement result = i < results.size() ? results.get(i) : null;
+            if (result != null && result.isJsonPrimitive() && result.getAsJsonPrimitive().isNumber()) {
+                // От постановки в очередь до ответа VK
+                Metrics.recordSince("vkbot_messages_send_seconds", message.enqueuedAt);
+                message.result.complete(result.getAsInt());
+                continue;
+            }
+
+            VkApiException error = new VkApiException(0, "сообщение не отправлено");
+            if (errorIndex < errors.size()) {
+                error = VkApiException.fromJson(errors.get(errorIndex++).getAsJsonObject());
+            }
+            if (error.isRetryable() && message.attempts < MAX_RETRIES) {
+                message.attempts++;
+                if (error.getCode() == VkApiException.TOO_MANY_REQUESTS) {
+                    Connection.rateLimiter.onThrottled();
+                }
+                Metrics.increment("vkbot_messages_send_retries_total{code=\"" + error.getCode() + "\"}");
+                retry.add(message);
+                continue;
+            }
+            logger.debug("Ошибка отправки в {}: {}", message.peerId, error.getMessage());
+            fail(message, error);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package vk.chatbot;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Входящее сообщение {@code message_new}: только поля, которые нужны боту.
+ * <p>
+ * {@code random_id} ответов выводится из {@code event_id} и номера ответа
+ * на это событие, поэтому повторная обработка того же события (после
+ * переподключения или вторым экземпляром бота) даёт те же
+ * {@code random_id}, и VK не доставит ответ дважды.
+ */
+public final class MessageEvent {
+    private final String eventId;
+    private final int peerId;
+    private final String text;
+    private final AtomicInteger replies = new AtomicInteger();
+
+    public MessageEvent(int peerId, String text) {
+        this(null, peerId, text);
+    }
+
+    /**
+     * @param eventId {@code event_id} из Long Poll или Callback API, может быть {@code null}
+     */
+    public MessageEvent(String eventId, int peerId, String text) {
+        this.eventId = eventId;
+        this.peerId = peerId;
+        this.text = text;
+    }
+
+    public String getEventId() {
+        return eventId;
+    }
+
+    public int getPeerId() {
+        return peerId;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * {@code random_id} для очередного ответа на это событие: положительное
+     * число, одинаковое для одного и того же события и номера ответа.
+     * Без {@code event_id} — случайное.
+     */
+    public int nextRandomId() {
+        int reply = replies.getAndIncrement();
+        if (eventId == null) {
+            return ThreadLocalRandom.current().nextInt(1, Integer.MAX_VALUE);
+        }
+        // FNV-1a по event_id и номеру ответа
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < eventId.length(); i++) {
+            hash = (hash ^ eventId.charAt(i)) * 0x01000193;
+        }
+        hash = (hash ^ reply) * 0x01000193;
+        hash &= Integer.MAX_VALUE;
+        return hash == 0 ? 1 : hash;
+    }
+}
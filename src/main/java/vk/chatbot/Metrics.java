@@ -0,0 +1,175 @@
+package vk.chatbot;
+
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Метрики бота и их выдача в текстовом формате Prometheus на
+ * {@code http://127.0.0.1:<vkbot.metricsPort>/metrics}.
+ * Задержки хранятся в {@link LatencyHistogram} (наносекунды) и
+ * отдаются как summary в секундах с квантилями 0.5/0.9/0.99/0.999.
+ * Квантили считаются по скользящему окну {@code vkbot.metricsWindowSec}
+ * (60 секунд) и без наблюдений в окне равны NaN; {@code _sum} и
+ * {@code _count} накапливаются за всё время.
+ * Имя метрики может включать метки: {@code name{command="search"}}.
+ */
+public class Metrics {
+    private static final Logger logger = LoggerFactory.getLogger(Metrics.class);
+    private static final int PORT = Integer.getInteger("vkbot.metricsPort", 9091);
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("vkbot.metricsWindowSec", 60));
+    private static final int WINDOW_SLOTS = 6;
+
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    // Распределения безразмерных величин (например, размера пачки)
+    private static final Map<String, LatencyHistogram> valueHistograms = new ConcurrentHashMap<>();
+    private static final Map<String, Supplier<Number>> gauges = new ConcurrentHashMap<>();
+    private static HttpServer server;
+
+    public static void increment(String name) {
+        add(name, 1);
+    }
+
+    public static void add(String name, long delta) {
+        counters.computeIfAbsent(name, k -> new LongAdder()).add(delta);
+    }
+
+    public static LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, k -> newHistogram());
+    }
+
+    public static void recordNanos(String name, long nanos) {
+        histogram(name).record(nanos);
+    }
+
+    public static void recordSince(String name, long startNanos) {
+        histogram(name).record(System.nanoTime() - startNanos);
+    }
+
+    public static void recordValue(String name, long value) {
+        valueHistograms.computeIfAbsent(name, k -> newHistogram()).record(value);
+    }
+
+    private static LatencyHistogram newHistogram() {
+        return new LatencyHistogram(WINDOW_NANOS, WINDOW_SLOTS);
+    }
+
+    public static void gauge(String name, Supplier<Number> value) {
+        gauges.put(name, value);
+    }
+
+    public static synchronized void startServer() {
+        if (server != null || PORT <= 0) {
+            return;
+        }
+        try {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", PORT), 0);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = render().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "metrics-http");
+                thread.setDaemon(true);
+                return thread;
+            }));
+            server.start();
+            logger.info("Метрики доступны на http://127.0.0.1:{}/metrics", PORT);
+        } catch (IOException e) {
+            logger.warn("Не удалось запустить сервер метрик на порту {}: {}", PORT, e.getMessage());
+        }
+    }
+
+    public static synchronized void stopServer() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    public static String render() {
+        StringBuilder out = new StringBuilder();
+        String lastType = null;
+
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+            lastType = typeLine(out, lastType, baseName(entry.getKey()), "counter");
+            out.append(entry.getKey()).append(' ').append(entry.getValue().sum()).append('\n');
+        }
+        for (Map.Entry<String, Supplier<Number>> entry : new TreeMap<>(gauges).entrySet()) {
+            lastType = typeLine(out, lastType, baseName(entry.getKey()), "gauge");
+            out.append(entry.getKey()).append(' ').append(entry.getValue().get()).append('\n');
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+            lastType = renderSummary(out, lastType, entry.getKey(), entry.getValue(), true);
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(valueHistograms).entrySet()) {
+            lastType = renderSummary(out, lastType, entry.getKey(), entry.getValue(), false);
+        }
+        return out.toString();
+    }
+
+    private static String renderSummary(StringBuilder out, String lastType, String key,
+                                        LatencyHistogram histogram, boolean nanos) {
+        String name = baseName(key);
+        String labels = labels(key);
+        lastType = typeLine(out, lastType, name, "summary");
+        boolean empty = histogram.getWindowCount() == 0;
+        for (double q : QUANTILES) {
+            out.append(name).append('{').append(labels).append(labels.isEmpty() ? "" : ",")
+                    .append("quantile=\"").append(q).append("\"} ")
+                    .append(empty ? "NaN" : format(histogram.quantile(q), nanos)).append('\n');
+        }
+        out.append(name).append("_sum").append(braces(labels)).append(' ')
+                .append(format(histogram.getSum(), nanos)).append('\n');
+        out.append(name).append("_count").append(braces(labels)).append(' ')
+                .append(histogram.getCount()).append('\n');
+        return lastType;
+    }
+
+    private static String typeLine(StringBuilder out, String lastType, String name, String type) {
+        if (!name.equals(lastType)) {
+            out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        }
+        return name;
+    }
+
+    private static String baseName(String key) {
+        int brace = key.indexOf('{');
+        return brace < 0 ? key : key.substring(0, brace);
+    }
+
+    private static String labels(String key) {
+        int brace = key.indexOf('{');
+        return brace < 0 ? "" : key.substring(brace + 1, key.length() - 1);
+    }
+
+    private static String braces(String labels) {
+        return labels.isEmpty() ? "" : "{" + labels + "}";
+    }
+
+    private static String format(long value, boolean nanos) {
+        if (!nanos) {
+            return String.valueOf(value);
+        }
+        return String.format(Locale.ROOT, "%.6f", value / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+}
@@ -0,0 +1,210 @@
+package vk.chatbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Фильтр нецензурных слов на автомате Ахо–Корасик. Словарь из файла
+ * {@code vkbot.badWordsPath} (по умолчанию — {@code bad_words.txt} из
+ * ресурсов) компилируется в таблицу переходов, и сообщение проверяется за
+ * один проход без аллокаций: стоимость не зависит от размера словаря.
+ * <p>
+ * Перед сравнением и словарь, и текст нормализуются одинаково: регистр,
+ * латинские двойники кириллицы («x» → «х»), leetspeak («0» → «о»,
+ * «3» → «з»), пропуск разделителей вроде «п.л.о.х.о» и схлопывание
+ * повторов («плоооохо»).
+ */
+public class ModerationFilter {
+    private static final Logger logger = LoggerFactory.getLogger(ModerationFilter.class);
+    private static final String DEFAULT_RESOURCE = "/bad_words.txt";
+    private static final char SKIP = 0;
+    private static final char[] NORMALIZED = buildNormalizationTable();
+
+    private static volatile ModerationFilter instance;
+
+    private final short[] symbols = new short[Character.MAX_VALUE + 1];
+    private final int alphabetSize;
+    private final int[] transitions;
+    private final boolean[] terminal;
+    private final int patternCount;
+
+    public ModerationFilter(Collection<String> words) {
+        List<Map<Character, Integer>> children = new ArrayList<>();
+        List<Boolean> ends = new ArrayList<>();
+        children.add(new HashMap<>());
+        ends.add(false);
+
+        // Символ 0 — «любой символ не из словаря»
+        int nextSymbol = 1;
+        int count = 0;
+        for (String word : words) {
+            char[] normalized = normalize(word);
+            if (normalized.length == 0) {
+                continue;
+            }
+            int state = 0;
+            for (char c : normalized) {
+                if (symbols[c] == 0) {
+                    symbols[c] = (short) nextSymbol++;
+                }
+                Integer next = children.get(state).get(c);
+                if (next == null) {
+                    next = children.size();
+                    children.get(state).put(c, next);
+                    children.add(new HashMap<>());
+                    ends.add(false);
+                }
+                state = next;
+            }
+            ends.set(state, true);
+            count++;
+        }
+
+        this.alphabetSize = nextSymbol;
+        this.patternCount = count;
+        this.transitions = new int[children.size() * alphabetSize];
+        this.terminal = new boolean[children.size()];
+        int[] fail = new int[children.size()];
+
+        // Обход в ширину: недостающие переходы берутся из состояния-отказа
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (Map.Entry<Character, Integer> edge : children.get(0).entrySet()) {
+            transitions[symbols[edge.getKey()]] = edge.getValue();
+            queue.add(edge.getValue());
+        }
+        terminal[0] = ends.get(0);
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            terminal[state] = ends.get(state) || terminal[fail[state]];
+            System.arraycopy(transitions, fail[state] * alphabetSize, transitions, state * alphabetSize, alphabetSize);
+            for (Map.Entry<Character, Integer> edge : children.get(state).entrySet()) {
+                int symbol = symbols[edge.getKey()];
+                int child = edge.getValue();
+                fail[child] = transitions[fail[state] * alphabetSize + symbol];
+                transitions[state * alphabetSize + symbol] = child;
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Общий фильтр бота; словарь читается при первом обращении.
+     */
+    public static ModerationFilter getInstance() {
+        ModerationFilter filter = instance;
+        if (filter == null) {
+            synchronized (ModerationFilter.class) {
+                if (instance == null) {
+                    instance = new ModerationFilter(loadWords());
+                    logger.info("Фильтр модерации: {} слов", instance.patternCount);
+                }
+                filter = instance;
+            }
+        }
+        return filter;
+    }
+
+    public boolean matches(String text) {
+        if (patternCount == 0 || text == null) {
+            return false;
+        }
+        int state = 0;
+        char previous = SKIP;
+        for (int i = 0; i < text.length(); i++) {
+            char c = NORMALIZED[text.charAt(i)];
+            if (c == SKIP || c == previous) {
+                continue;
+            }
+            previous = c;
+            state = transitions[state * alphabetSize + symbols[c]];
+            if (terminal[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    static char[] normalize(String word) {
+        StringBuilder sb = new StringBuilder(word.length());
+        char previous = SKIP;
+        for (int i = 0; i < word.length(); i++) {
+            char c = NORMALIZED[word.charAt(i)];
+            if (c != SKIP && c != previous) {
+                sb.append(c);
+                previous = c;
+            }
+        }
+        char[] result = new char[sb.length()];
+        sb.getChars(0, sb.length(), result, 0);
+        return result;
+    }
+
+    private static List<String> loadWords() {
+        String path = System.getProperty("vkbot.badWordsPath");
+        try {
+            if (path != null) {
+                return readWords(Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8));
+            }
+            InputStream in = ModerationFilter.class.getResourceAsStream(DEFAULT_RESOURCE);
+            if (in != null) {
+                return readWords(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+            }
+            logger.warn("Словарь модерации {} не найден", DEFAULT_RESOURCE);
+        } catch (IOException e) {
+            logger.error("Не удалось прочитать словарь модерации {}", path, e);
+        }
+        return new ArrayList<>();
+    }
+
+    // Одно слово или фраза на строку, строки с # — комментарии
+    private static List<String> readWords(BufferedReader reader) throws IOException {
+        List<String> words = new ArrayList<>();
+        try (BufferedReader in = reader) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    words.add(line);
+                }
+            }
+        }
+        return words;
+    }
+
+    private static char[] buildNormalizationTable() {
+        char[] table = new char[Character.MAX_VALUE + 1];
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            if (Character.isWhitespace(c)) {
+                // Любой пробельный символ — один пробел, чтобы совпадали фразы из словаря
+                table[c] = ' ';
+            } else if (Character.isLetterOrDigit(c)) {
+                table[c] = Character.toLowerCase((char) c);
+            }
+        }
+        // Латинские двойники кириллицы и leetspeak
+        String[] pairs = {"aа", "Aа", "eе", "Eе", "oо", "Oо", "pр", "Pр", "cс", "Cс", "xх", "Xх", "yу", "Yу",
+                "kк", "Kк", "mм", "Mм", "Tт", "Bв", "Hн", "ёе", "Ёе", "0о", "@а", "3з", "4ч", "6б", "$с"};
+        for (String pair : pairs) {
+            table[pair.charAt(0)] = pair.charAt(1);
+        }
+        return table;
+    }
+}
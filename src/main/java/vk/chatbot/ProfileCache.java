@@ -0,0 +1,141 @@
+package vk.chatbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Кэш имён пользователей. Записи живут {@code vkbot.profileTtlMs} и
+ * вытесняются по LRU сверх {@code vkbot.profileCacheSize}. Промахи,
+ * накопившиеся за короткое окно, загружаются одним вызовом
+ * {@code users.get} с несколькими {@code user_ids}.
+ */
+public class ProfileCache {
+    private static final Logger logger = LoggerFactory.getLogger(ProfileCache.class);
+    private static final long TTL_MS = Long.getLong("vkbot.profileTtlMs", TimeUnit.HOURS.toMillis(6));
+    private static final int MAX_ENTRIES = Integer.getInteger("vkbot.profileCacheSize", 10_000);
+    private static final long BATCH_DELAY_MS = 20;
+    private static final int MAX_BATCH = 100;
+
+    private static final Map<Integer, CachedName> cache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, CachedName> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private static final Map<Integer, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private static final BlockingQueue<Integer> pending = new LinkedBlockingQueue<>();
+    private static final Thread loader = startLoader();
+
+    private static final class CachedName {
+        final String name;
+        final long expiresAt;
+
+        CachedName(String name, long expiresAt) {
+            this.name = name;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Имя пользователя из кэша или из ближайшей пакетной загрузки.
+     * Завершается {@code null}, если VK не вернул пользователя.
+     */
+    public static CompletableFuture<String> getFirstName(int userId) {
+        synchronized (cache) {
+            CachedName cached = cache.get(userId);
+            if (cached != null) {
+                if (cached.expiresAt > System.currentTimeMillis()) {
+                    return CompletableFuture.completedFuture(cached.name);
+                }
+                cache.remove(userId);
+            }
+        }
+
+        CompletableFuture<String> created = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(userId, created);
+        if (existing != null) {
+            return existing;
+        }
+        pending.add(userId);
+        return created;
+    }
+
+    public static int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private static Thread startLoader() {
+        Thread thread = new Thread(ProfileCache::runLoader, "profile-loader");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void runLoader() {
+        List<Integer> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            try {
+                batch.add(pending.take());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BATCH_DELAY_MS);
+                while (batch.size() < MAX_BATCH) {
+                    Integer next = pending.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                load(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // Не ждёт ответа: загрузчик сразу собирает следующую пачку
+    private static void load(List<Integer> userIds) {
+        List<Integer> ids = new ArrayList<>(userIds);
+        Connection.api.getUsers(ids).whenComplete((users, error) -> {
+            if (error != null) {
+                logger.error("Ошибка получения имён пользователей {}", ids, error);
+                for (Integer userId : ids) {
+                    CompletableFuture<String> future = inFlight.remove(userId);
+                    if (future != null) {
+                        future.completeExceptionally(error);
+                    }
+                }
+                return;
+            }
+
+            Map<Integer, String> names = new HashMap<>();
+            long expiresAt = System.currentTimeMillis() + TTL_MS;
+            synchronized (cache) {
+                for (VkApiClient.User user : users) {
+                    names.put(user.getId(), user.getFirstName());
+                    cache.put(user.getId(), new CachedName(user.getFirstName(), expiresAt));
+                }
+            }
+            for (Integer userId : ids) {
+                CompletableFuture<String> future = inFlight.remove(userId);
+                if (future != null) {
+                    future.complete(names.get(userId));
+                }
+            }
+        });
+    }
+}
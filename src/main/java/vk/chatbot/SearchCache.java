@@ -0,0 +1,92 @@
+package vk.chatbot;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Кэш ответов на поисковые запросы. Ключ — нормализованный запрос
+ * (слова в нижнем регистре, без повторов и без учёта порядка), поэтому
+ * «Найди Java» и «java» попадают в одну запись. Записи вытесняются по LRU
+ * и сбрасываются целиком, как только публикуется новая версия каталога.
+ * Запросы по устаревшей версии (читатель взял каталог до замены)
+ * считаются без кэша и не трогают записи новой версии.
+ */
+public class SearchCache {
+    private final int maxEntries;
+    private final Map<String, String> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private long version = -1;
+
+    public SearchCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > SearchCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Ответ из кэша для версии {@code catalog} или результат
+     * {@code compute}. Вычисление идёт без блокировки: два одновременных
+     * промаха по одному запросу просто посчитают его дважды.
+     */
+    public String get(Catalog catalog, String query, Function<String, String> compute) {
+        String key = normalize(query);
+        if (key.isEmpty() || maxEntries <= 0) {
+            return compute.apply(query);
+        }
+
+        boolean stale;
+        synchronized (entries) {
+            if (catalog.getVersion() > version) {
+                entries.clear();
+                version = catalog.getVersion();
+            }
+            stale = catalog.getVersion() < version;
+            String cached = stale ? null : entries.get(key);
+            if (cached != null) {
+                hits.increment();
+                Metrics.increment("vkbot_search_cache_total{result=\"hit\"}");
+                return cached;
+            }
+        }
+
+        misses.increment();
+        Metrics.increment("vkbot_search_cache_total{result=\"miss\"}");
+        String answer = compute.apply(query);
+        if (stale) {
+            return answer;
+        }
+        synchronized (entries) {
+            // За время поиска каталог мог смениться — такой ответ не кэшируем
+            if (version == catalog.getVersion()) {
+                entries.put(key, answer);
+            }
+        }
+        return answer;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    static String normalize(String query) {
+        return String.join(" ", new TreeSet<>(SearchIndex.tokenizeWords(query)));
+    }
+}
@@ -0,0 +1,283 @@
+package vk.chatbot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Инвертированный индекс по каталогу проектов с ранжированием BM25.
+ * Строится один раз при загрузке каталога, после чего не изменяется,
+ * поэтому поиск можно выполнять из любого потока без синхронизации.
+ */
+public class SearchIndex {
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    // Совпадение в названии весит больше, чем в описании
+    private static final int TITLE_WEIGHT = 2;
+
+    private static final String[] RU_ENDINGS = {
+            "иями", "ями", "ами", "иях", "ого", "его", "ому", "ему", "ыми", "ими", "ией", "ешь", "ете",
+            "ия", "ие", "ий", "ый", "ой", "ей", "ая", "яя", "ое", "ее", "ые", "ую", "юю", "ию",
+            "ам", "ям", "ах", "ях", "ом", "ем", "ов", "ев", "ть", "ся",
+            "а", "я", "о", "е", "ы", "и", "у", "ю", "ь", "й"
+    };
+    private static final int MIN_STEM = 3;
+    // Сколько похожих терминов подставлять вместо слова с опечаткой
+    private static final int MAX_EXPANSIONS = 2;
+
+    private static final String[][] TRANSLIT = {
+            {"shch", "щ"}, {"sch", "щ"}, {"zh", "ж"}, {"kh", "х"}, {"ts", "ц"}, {"ch", "ч"}, {"sh", "ш"},
+            {"yu", "ю"}, {"ya", "я"}, {"yo", "е"}, {"iy", "ий"}, {"a", "а"}, {"b", "б"}, {"v", "в"},
+            {"g", "г"}, {"d", "д"}, {"e", "е"}, {"z", "з"}, {"i", "и"}, {"y", "ы"}, {"k", "к"},
+            {"l", "л"}, {"m", "м"}, {"n", "н"}, {"o", "о"}, {"p", "п"}, {"r", "р"}, {"s", "с"},
+            {"t", "т"}, {"u", "у"}, {"f", "ф"}, {"h", "х"}, {"c", "к"}, {"w", "в"}, {"x", "кс"},
+            {"q", "к"}, {"j", "й"}
+    };
+
+    private final List<ProjectInfo> projects;
+    private final Map<String, Posting[]> postings;
+    private final int[] docLengths;
+    private final float avgDocLength;
+    private final FuzzyTermMatcher fuzzy;
+
+    private static final class Posting {
+        final int doc;
+        final int freq;
+
+        Posting(int doc, int freq) {
+            this.doc = doc;
+            this.freq = freq;
+        }
+    }
+
+    public static final class Hit {
+        private final ProjectInfo project;
+        private final float score;
+
+        Hit(ProjectInfo project, float score) {
+            this.project = project;
+            this.score = score;
+        }
+
+        public ProjectInfo getProject() {
+            return project;
+        }
+
+        public float getScore() {
+            return score;
+        }
+    }
+
+    private SearchIndex(List<ProjectInfo> projects, Map<String, Posting[]> postings, int[] docLengths) {
+        this.projects = projects;
+        this.postings = postings;
+        this.docLengths = docLengths;
+
+        long total = 0;
+        for (int length : docLengths) {
+            total += length;
+        }
+        this.avgDocLength = docLengths.length == 0 ? 0f : (float) total / docLengths.length;
+        this.fuzzy = new FuzzyTermMatcher(postings.keySet());
+    }
+
+    public static SearchIndex build(List<ProjectInfo> projects) {
+        List<ProjectInfo> docs = Collections.unmodifiableList(new ArrayList<>(projects));
+        Map<String, List<Posting>> building = new HashMap<>();
+        int[] docLengths = new int[docs.size()];
+
+        for (int doc = 0; doc < docs.size(); doc++) {
+            ProjectInfo project = docs.get(doc);
+            Map<String, Integer> freqs = new HashMap<>();
+            int length = 0;
+            for (String term : tokenize(project.getTitle())) {
+                freqs.merge(term, TITLE_WEIGHT, Integer::sum);
+                length += TITLE_WEIGHT;
+            }
+            for (String term : tokenize(project.getDescription())) {
+                freqs.merge(term, 1, Integer::sum);
+                length++;
+            }
+            docLengths[doc] = length;
+            for (Map.Entry<String, Integer> entry : freqs.entrySet()) {
+                building.computeIfAbsent(entry.getKey(), k -> new ArrayList<>())
+                        .add(new Posting(doc, entry.getValue()));
+            }
+        }
+
+        Map<String, Posting[]> postings = new HashMap<>(building.size() * 2);
+        for (Map.Entry<String, List<Posting>> entry : building.entrySet()) {
+            postings.put(entry.getKey(), entry.getValue().toArray(new Posting[0]));
+        }
+        return new SearchIndex(docs, postings, docLengths);
+    }
+
+    public int size() {
+        return projects.size();
+    }
+
+    public List<ProjectInfo> getProjects() {
+        return projects;
+    }
+
+    /**
+     * Возвращает до {@code limit} лучших проектов по запросу. Стоимость
+     * пропорциональна числу совпавших постингов, а не размеру каталога.
+     * Слово, которого нет в индексе, заменяется похожими терминами (с
+     * понижающим весом), а набранное латиницей — ещё и транслитерацией.
+     */
+    public List<Hit> search(String query, int limit) {
+        if (limit <= 0 || projects.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Map<Integer, Float> scores = new HashMap<>();
+        for (String word : new LinkedHashSet<>(tokenizeWords(query))) {
+            String term = stem(word);
+            Posting[] list = postings.get(term);
+            if (list != null) {
+                accumulate(scores, list, 1f);
+                continue;
+            }
+            String transliterated = isLatin(word) ? stem(transliterate(word)) : null;
+            if (transliterated != null && postings.containsKey(transliterated)) {
+                accumulate(scores, postings.get(transliterated), 1f);
+                continue;
+            }
+            // Опечатка в английском термине (pythn, kotlen) ищется как есть,
+            // и только если похожих нет — среди транслитерации
+            if (!accumulateFuzzy(scores, term) && transliterated != null) {
+                accumulateFuzzy(scores, transliterated);
+            }
+        }
+
+        PriorityQueue<Map.Entry<Integer, Float>> top = new PriorityQueue<>(limit + 1,
+                (a, b) -> a.getValue().equals(b.getValue())
+                        ? Integer.compare(b.getKey(), a.getKey())
+                        : Float.compare(a.getValue(), b.getValue()));
+        for (Map.Entry<Integer, Float> entry : scores.entrySet()) {
+            top.offer(entry);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            Map.Entry<Integer, Float> entry = top.poll();
+            hits.add(new Hit(projects.get(entry.getKey()), entry.getValue()));
+        }
+        Collections.reverse(hits);
+        return hits;
+    }
+
+    private boolean accumulateFuzzy(Map<Integer, Float> scores, String term) {
+        List<FuzzyTermMatcher.Match> matches = fuzzy.find(term, MAX_EXPANSIONS);
+        for (FuzzyTermMatcher.Match match : matches) {
+            accumulate(scores, postings.get(match.getTerm()), 1f / (1 + match.getDistance()));
+        }
+        return !matches.isEmpty();
+    }
+
+    private void accumulate(Map<Integer, Float> scores, Posting[] list, float weight) {
+        float idf = (float) Math.log(1 + (projects.size() - list.length + 0.5) / (list.length + 0.5));
+        for (Posting posting : list) {
+            float norm = K1 * (1 - B + B * docLengths[posting.doc] / avgDocLength);
+            float score = idf * posting.freq * (K1 + 1) / (posting.freq + norm);
+            scores.merge(posting.doc, score * weight, Float::sum);
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> terms = tokenizeWords(text);
+        terms.replaceAll(SearchIndex::stem);
+        return terms;
+    }
+
+    // Слова в нижнем регистре, без стемминга
+    static List<String> tokenizeWords(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                c = Character.toLowerCase(c);
+                token.append(c == 'ё' ? 'е' : c);
+            } else if (token.length() > 0) {
+                if (token.length() > 1) {
+                    terms.add(token.toString());
+                }
+                token.setLength(0);
+            }
+        }
+        return terms;
+    }
+
+    static String stem(String word) {
+        if (isCyrillic(word)) {
+            for (String ending : RU_ENDINGS) {
+                if (word.length() - ending.length() >= MIN_STEM && word.endsWith(ending)) {
+                    return word.substring(0, word.length() - ending.length());
+                }
+            }
+            return word;
+        }
+        return stemEnglish(word);
+    }
+
+    private static String stemEnglish(String word) {
+        if (word.endsWith("ies") && word.length() > 4) {
+            return word.substring(0, word.length() - 3) + "y";
+        }
+        if (word.endsWith("sses")) {
+            return word.substring(0, word.length() - 2);
+        }
+        if (word.endsWith("ing") && word.length() - 3 >= MIN_STEM) {
+            return word.substring(0, word.length() - 3);
+        }
+        if (word.endsWith("ed") && word.length() - 2 >= MIN_STEM) {
+            return word.substring(0, word.length() - 2);
+        }
+        if (word.endsWith("ly") && word.length() - 2 >= MIN_STEM) {
+            return word.substring(0, word.length() - 2);
+        }
+        if (word.endsWith("s") && !word.endsWith("ss") && word.length() - 1 >= MIN_STEM) {
+            return word.substring(0, word.length() - 1);
+        }
+        return word;
+    }
+
+    static String transliterate(String word) {
+        StringBuilder result = new StringBuilder(word.length());
+        int i = 0;
+        outer:
+        while (i < word.length()) {
+            for (String[] pair : TRANSLIT) {
+                if (word.startsWith(pair[0], i)) {
+                    result.append(pair[1]);
+                    i += pair[0].length();
+                    continue outer;
+                }
+            }
+            result.append(word.charAt(i++));
+        }
+        return result.toString();
+    }
+
+    private static boolean isLatin(String word) {
+        char first = word.charAt(0);
+        return first >= 'a' && first <= 'z';
+    }
+
+    private static boolean isCyrillic(String word) {
+        return Character.UnicodeBlock.of(word.charAt(0)) == Character.UnicodeBlock.CYRILLIC;
+    }
+}
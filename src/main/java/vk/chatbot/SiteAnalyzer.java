@@ -8,49 +8,150 @@ import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.time.Duration;
 
 public class SiteAnalyzer {
     private static final Logger logger = LoggerFactory.getLogger(SiteAnalyzer.class);
-    private static final Set<String> parsedUrls = Collections.newSetFromMap(new ConcurrentHashMap<>());
-    private static int currentPageNumber = 1;
     private static final int MAX_PAGES = 10;
     private static final int MAX_RETRIES = 3;
-
+    // Старые фиксированные паузы — только для сравнения времени ожидания
+    private static final boolean FIXED_SLEEPS = Boolean.getBoolean("vkbot.scrapeFixedSleeps");
+    private static final long CONTENT_TIMEOUT_MS = 15_000;
+    private static final ThreadLocal<long[]> waitNanos = ThreadLocal.withInitial(() -> new long[1]);
+
+    private static final String CARD_FINGERPRINT_FN =
+            "function fingerprint() {" +
+            "  return Array.from(document.querySelectorAll(" +
+            "    '.t-store__card__wrap_all a, .js-product.t-store_card a'))" +
+            "    .slice(0, 5).map(function (a) { return a.href; }).join('|');" +
+            "}";
+    // Ждёт, пока набор карточек станет непустым и отличным от прежнего,
+    // через MutationObserver, без опроса по таймеру
+    private static final String WAIT_FOR_CARDS_CHANGE_JS =
+            "var previous = arguments[0], timeoutMs = arguments[1], done = arguments[arguments.length - 1];" +
+            CARD_FINGERPRINT_FN +
+            "function ready() { var f = fingerprint(); return f.length > 0 && f !== previous; }" +
+            "if (ready()) { done(true); return; }" +
+            "var timer;" +
+            "var observer = new MutationObserver(function () {" +
+            "  if (ready()) { observer.disconnect(); clearTimeout(timer); done(true); }" +
+            "});" +
+            "observer.observe(document.body, {childList: true, subtree: true, attributes: true, attributeFilter: ['href']});" +
+            "timer = setTimeout(function () { observer.disconnect(); done(ready()); }, timeoutMs);";
+
+    /**
+     * Первая страница разбирается в одной сессии, заодно по пагинации
+     * определяется число страниц. Остальные страницы делятся на
+     * непрерывные диапазоны по числу сессий {@link WebDriverProvider}:
+     * каждая сессия один раз переходит к началу своего диапазона и дальше
+     * идёт только вперёд, с повторами на каждую страницу; результат
+     * собирается в порядке страниц.
+     */
     public static List<ProjectInfo> parseAllProjects() {
+        Set<String> parsedUrls = Collections.newSetFromMap(new ConcurrentHashMap<>());
         List<ProjectInfo> projects = new ArrayList<>();
-        WebDriver driver = WebDriverProvider.getDriver();
-        WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(30));
+        int pageCount = 1;
 
+        long started = System.nanoTime();
+        WebDriver driver = WebDriverProvider.lease();
         try {
-            initializeParsingSession(driver, wait);
+            resetWaitTime();
+            initializeParsingSession(driver);
+            if (parseCurrentPageWithRetry(driver, projects, parsedUrls, 1, MAX_RETRIES)) {
+                pageCount = detectPageCount(driver);
+            }
+            recordPage(1, started);
+        } catch (Exception e) {
+            logger.error("Критическая ошибка парсинга: ", e);
+            WebDriverProvider.invalidate(driver);
+            return projects;
+        } finally {
+            releaseQuietly(driver);
+        }
 
-            while (currentPageNumber <= MAX_PAGES) {
-                if (!parseCurrentPageWithRetry(driver, projects, MAX_RETRIES)) {
-                    break;
+        if (pageCount > 1) {
+            int remaining = pageCount - 1;
+            int workers = Math.min(WebDriverProvider.getPoolSize(), remaining);
+            ExecutorService pages = Executors.newFixedThreadPool(workers);
+            try {
+                List<CompletableFuture<List<ProjectInfo>>> results = new ArrayList<>();
+                int firstPage = 2;
+                for (int worker = 0; worker < workers; worker++) {
+                    int from = firstPage;
+                    int to = from + remaining / workers - 1 + (worker < remaining % workers ? 1 : 0);
+                    results.add(CompletableFuture.supplyAsync(() -> scrapeRange(from, to, parsedUrls), pages));
+                    firstPage = to + 1;
                 }
-
-                if (!navigateToNextPage(driver)) {
-                    break;
+                for (CompletableFuture<List<ProjectInfo>> result : results) {
+                    projects.addAll(result.join());
                 }
+            } finally {
+                pages.shutdown();
+            }
+        }
 
-                currentPageNumber++;
-                waitForPageLoad(driver);
+        logger.info("Парсинг завершен за {} мс. Всего найдено уникальных проектов: {}",
+                (System.nanoTime() - started) / 1_000_000, projects.size());
+        return projects;
+    }
+
+    /**
+     * Разбирает страницы с {@code firstPage} по {@code lastPage} одной
+     * сессией, переходя от страницы к следующей. Если сессия сломалась,
+     * новая переходит сразу к странице, на которой остановилась прежняя.
+     */
+    private static List<ProjectInfo> scrapeRange(int firstPage, int lastPage, Set<String> parsedUrls) {
+        List<ProjectInfo> projects = new ArrayList<>();
+        int page = firstPage;
+        int failures = 0;
+        while (page <= lastPage && failures < MAX_RETRIES) {
+            WebDriver driver = WebDriverProvider.lease();
+            try {
+                long pageStarted = System.nanoTime();
+                resetWaitTime();
+                initializeParsingSession(driver);
+                int current = 1;
+                while (page <= lastPage) {
+                    if (!navigateToPage(driver, current, page)) {
+                        throw new IllegalStateException("не удалось перейти на страницу " + page);
+                    }
+                    parseCurrentPageWithRetry(driver, projects, parsedUrls, page, MAX_RETRIES);
+                    recordPage(page, pageStarted);
+                    current = page++;
+                    failures = 0;
+                    pageStarted = System.nanoTime();
+                    resetWaitTime();
+                }
+            } catch (Exception e) {
+                failures++;
+                logger.warn("Попытка {}/{}: ошибка загрузки страницы {}: {}",
+                        failures, MAX_RETRIES, page, e.getMessage());
+                WebDriverProvider.invalidate(driver);
+            } finally {
+                releaseQuietly(driver);
             }
+        }
+        if (page <= lastPage) {
+            logger.error("Страницы {}-{} не загружены после {} попыток", page, lastPage, MAX_RETRIES);
+        }
+        return projects;
+    }
 
-            logger.info("Парсинг завершен. Всего найдено уникальных проектов: {}", projects.size());
-        } catch (Exception e) {
-            logger.error("Критическая ошибка парсинга: ", e);
-        } finally {
+    private static void releaseQuietly(WebDriver driver) {
+        try {
             driver.switchTo().defaultContent();
+        } catch (Exception ignored) {
+            // сессия уже закрыта
         }
-        return projects;
+        WebDriverProvider.release(driver);
     }
 
-    private static void initializeParsingSession(WebDriver driver, WebDriverWait wait) {
-        parsedUrls.clear();
-        currentPageNumber = 1;
+    private static void initializeParsingSession(WebDriver driver) {
+        WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(30));
 
         driver.get("https://education.vk.company/education_projects");
         wait.until(ExpectedConditions.jsReturnsValue("return document.readyState === 'complete'"));
@@ -63,13 +164,84 @@ public class SiteAnalyzer {
                 By.cssSelector(".t-store__card__wrap_all")));
     }
 
-    private static boolean parseCurrentPageWithRetry(WebDriver driver, List<ProjectInfo> projects, int maxRetries) {
+    /**
+     * Пагинация показывает не все номера, поэтому от последнего видимого
+     * номера идём кнопкой «Далее», пока она не станет неактивной, но не
+     * дальше {@link #MAX_PAGES}. Если активная кнопка не открывает
+     * следующую страницу, бросает {@link IllegalStateException}: иначе
+     * каталог молча обрезался бы.
+     */
+    private static int detectPageCount(WebDriver driver) {
+        int pageCount = Math.min(MAX_PAGES, Math.max(1, highestVisiblePage(driver, Integer.MAX_VALUE)));
+        if (!navigateToPage(driver, 1, pageCount)) {
+            throw new IllegalStateException("Не удалось перейти на страницу " + pageCount + " для подсчёта страниц");
+        }
+        while (hasNextPage(driver)) {
+            if (pageCount >= MAX_PAGES) {
+                logger.warn("В каталоге больше {} страниц, остальные пропущены", MAX_PAGES);
+                break;
+            }
+            int reached = navigateToNextPage(driver, pageCount, pageCount + 1);
+            if (reached <= pageCount) {
+                throw new IllegalStateException("Кнопка «Далее» активна, но страница "
+                        + (pageCount + 1) + " не открылась");
+            }
+            pageCount = reached;
+        }
+        logger.info("Страниц в каталоге: {}", pageCount);
+        return pageCount;
+    }
+
+    /** Наибольший номер страницы в пагинации, не превышающий {@code limit}, или 0. */
+    private static int highestVisiblePage(WebDriver driver, int limit) {
+        int highest = 0;
+        for (WebElement item : driver.findElements(By.cssSelector(".t-store__pagination__item_page[data-page-num]"))) {
+            try {
+                int number = Integer.parseInt(item.getAttribute("data-page-num"));
+                if (number <= limit) {
+                    highest = Math.max(highest, number);
+                }
+            } catch (NumberFormatException e) {
+                logger.debug("Некорректный номер страницы: {}", item.getAttribute("data-page-num"));
+            }
+        }
+        return highest;
+    }
+
+    private static boolean hasNextPage(WebDriver driver) {
+        for (WebElement next : driver.findElements(By.cssSelector(".t-store__pagination__btn_next:not(.t-disabled)"))) {
+            if (next.isDisplayed()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Переходит со страницы {@code current} на {@code pageNumber}: каждый
+     * раз по самому дальнему видимому номеру не дальше цели, а если такого
+     * нет — кнопкой «Далее».
+     */
+    private static boolean navigateToPage(WebDriver driver, int current, int pageNumber) {
+        while (current < pageNumber) {
+            int reached = navigateToNextPage(driver, current, pageNumber);
+            if (reached <= current) {
+                return false;
+            }
+            current = reached;
+            waitForPageLoad(driver);
+        }
+        return true;
+    }
+
+    private static boolean parseCurrentPageWithRetry(WebDriver driver, List<ProjectInfo> projects,
+                                                     Set<String> parsedUrls, int pageNumber, int maxRetries) {
         int attempts = 0;
         while (attempts < maxRetries) {
             attempts++;
             int beforeCount = projects.size();
 
-            parseCurrentPage(driver, projects);
+            parseCurrentPage(driver, projects, parsedUrls, pageNumber);
             int newProjects = projects.size() - beforeCount;
 
             if (newProjects > 0) {
@@ -77,7 +249,7 @@ public class SiteAnalyzer {
             }
 
             logger.warn("Попытка {}/{}: на странице {} не найдено новых проектов",
-                    attempts, maxRetries, currentPageNumber);
+                    attempts, maxRetries, pageNumber);
 
             if (attempts < maxRetries) {
                 refreshPage(driver);
@@ -86,7 +258,8 @@ public class SiteAnalyzer {
         return false;
     }
 
-    private static void parseCurrentPage(WebDriver driver, List<ProjectInfo> projects) {
+    private static void parseCurrentPage(WebDriver driver, List<ProjectInfo> projects,
+                                         Set<String> parsedUrls, int pageNumber) {
         List<WebElement> cards = driver.findElements(By.cssSelector(
                 ".t-store__card__wrap_all, .js-product.t-store_card"));
 
@@ -96,9 +269,8 @@ public class SiteAnalyzer {
         for (WebElement card : cards) {
             try {
                 ProjectInfo project = extractProjectInfo(card);
-                if (project != null && !parsedUrls.contains(project.getUrl())) {
+                if (project != null && parsedUrls.add(project.getUrl())) {
                     projects.add(project);
-                    parsedUrls.add(project.getUrl());
                     projectTitles.append(project.getTitle()).append(" | ");
                     newProjectsCount++;
                 }
@@ -113,7 +285,7 @@ public class SiteAnalyzer {
                     : projectTitles.toString();
 
             logger.info("Страница {}: {}\nНайдено проектов: {}",
-                    currentPageNumber, titlesPreview, newProjectsCount);
+                    pageNumber, titlesPreview, newProjectsCount);
         }
     }
 
@@ -133,7 +305,11 @@ public class SiteAnalyzer {
         return new ProjectInfo(title, description, url);
     }
 
-    private static boolean navigateToNextPage(WebDriver driver) {
+    /**
+     * Возвращает номер страницы, на которую удалось перейти, или
+     * {@code currentPage}, если перехода не было.
+     */
+    private static int navigateToNextPage(WebDriver driver, int currentPage, int targetPage) {
         try {
             // Проверяем наличие элементов пагинации вообще
             List<WebElement> paginationElements = driver.findElements(By.cssSelector(
@@ -141,45 +317,73 @@ public class SiteAnalyzer {
 
             if (paginationElements.isEmpty()) {
                 logger.debug("Элементы пагинации не найдены");
-                return false;
+                return currentPage;
             }
 
-            // Сначала пробуем найти кнопку следующей страницы по номеру
-            String nextPageNumSelector = String.format(
-                    ".t-store__pagination__item_page[data-page-num='%d']",
-                    currentPageNumber + 1);
-
-            List<WebElement> nextPageButtons = driver.findElements(By.cssSelector(nextPageNumSelector));
+            // Сначала пробуем перейти по самому дальнему номеру не дальше цели
+            int reachedPage = highestVisiblePage(driver, targetPage);
+            List<WebElement> nextPageButtons = reachedPage > currentPage
+                    ? driver.findElements(By.cssSelector(String.format(
+                            ".t-store__pagination__item_page[data-page-num='%d']", reachedPage)))
+                    : List.of();
 
             // Если не нашли, пробуем кнопку "Далее"
             if (nextPageButtons.isEmpty()) {
+                reachedPage = currentPage + 1;
                 nextPageButtons = driver.findElements(
                         By.cssSelector(".t-store__pagination__btn_next:not(.t-disabled)"));
 
                 if (nextPageButtons.isEmpty()) {
                     logger.info("Достигнут конец страниц. Нет активной кнопки перехода");
-                    return false;
+                    return currentPage;
                 }
             }
 
             WebElement nextButton = nextPageButtons.get(0);
             if (!nextButton.isDisplayed() || !nextButton.isEnabled()) {
                 logger.debug("Кнопка перехода неактивна или невидима");
-                return false;
+                return currentPage;
             }
 
+            String before = cardFingerprint(driver);
             scrollAndClick(driver, nextButton);
 
-            // Ждем загрузки нового контента
-            waitForPageContentLoad(driver);
-            return true;
+            // Ждем, пока отрисуется новый набор карточек
+            waitForCardsChange(driver, before);
+            return reachedPage;
 
         } catch (NoSuchElementException e) {
             logger.info("Элементы пагинации не найдены. Парсинг завершен");
-            return false;
+            return currentPage;
         } catch (Exception e) {
             logger.warn("Ошибка при попытке перехода на следующую страницу: {}", e.getMessage());
-            return false;
+            return currentPage;
+        }
+    }
+
+    private static String cardFingerprint(WebDriver driver) {
+        Object fingerprint = ((JavascriptExecutor) driver).executeScript(
+                CARD_FINGERPRINT_FN + "return fingerprint();");
+        return fingerprint == null ? "" : fingerprint.toString();
+    }
+
+    private static void waitForCardsChange(WebDriver driver, String previousFingerprint) {
+        long started = System.nanoTime();
+        try {
+            if (FIXED_SLEEPS) {
+                waitForPageContentLoad(driver);
+                return;
+            }
+            driver.manage().timeouts().scriptTimeout(Duration.ofMillis(CONTENT_TIMEOUT_MS + 5_000));
+            Object changed = ((JavascriptExecutor) driver).executeAsyncScript(
+                    WAIT_FOR_CARDS_CHANGE_JS, previousFingerprint, CONTENT_TIMEOUT_MS);
+            if (!Boolean.TRUE.equals(changed)) {
+                logger.warn("Карточки не обновились за {} мс", CONTENT_TIMEOUT_MS);
+            }
+        } catch (Exception e) {
+            logger.warn("Контент страницы не загрузился полностью: {}", e.getMessage());
+        } finally {
+            waitNanos.get()[0] += System.nanoTime() - started;
         }
     }
 
@@ -202,10 +406,10 @@ public class SiteAnalyzer {
 
     private static void scrollAndClick(WebDriver driver, WebElement element) {
         ((JavascriptExecutor)driver).executeScript(
-                "arguments[0].scrollIntoView({behavior: 'smooth', block: 'center'});",
+                "arguments[0].scrollIntoView({block: 'center'});",
                 element);
         try {
-            Thread.sleep(1000);
+            pauseIfFixed(1000);
             ((JavascriptExecutor)driver).executeScript("arguments[0].click();", element);
         } catch (Exception e) {
             throw new RuntimeException("Ошибка при клике на элемент", e);
@@ -213,25 +417,55 @@ public class SiteAnalyzer {
     }
 
     private static void refreshPage(WebDriver driver) {
+        long started = System.nanoTime();
         try {
             driver.navigate().refresh();
-            Thread.sleep(2000);
+            pauseIfFixed(2000);
+            started = System.nanoTime();
             new WebDriverWait(driver, Duration.ofSeconds(10))
                     .until(ExpectedConditions.presenceOfElementLocated(
                             By.cssSelector(".t-store__card__wrap_all")));
         } catch (Exception e) {
             logger.warn("Ошибка при обновлении страницы: {}", e.getMessage());
+        } finally {
+            waitNanos.get()[0] += System.nanoTime() - started;
         }
     }
 
     private static void waitForPageLoad(WebDriver driver) {
+        long started = System.nanoTime();
         try {
-            Thread.sleep(2000);
+            pauseIfFixed(2000);
+            started = System.nanoTime();
             new WebDriverWait(driver, Duration.ofSeconds(15))
                     .until(ExpectedConditions.jsReturnsValue(
                             "return document.readyState === 'complete'"));
         } catch (Exception e) {
             logger.warn("Ошибка ожидания загрузки страницы: {}", e.getMessage());
+        } finally {
+            waitNanos.get()[0] += System.nanoTime() - started;
         }
     }
-}
\ No newline at end of file
+
+    private static void pauseIfFixed(long millis) throws InterruptedException {
+        if (FIXED_SLEEPS) {
+            long started = System.nanoTime();
+            Thread.sleep(millis);
+            waitNanos.get()[0] += System.nanoTime() - started;
+        }
+    }
+
+    private static void resetWaitTime() {
+        waitNanos.get()[0] = 0;
+    }
+
+    private static void recordPage(int pageNumber, long startedNanos) {
+        Metrics.recordSince("vkbot_scrape_page_seconds", startedNanos);
+        logWaitTime(pageNumber);
+    }
+
+    private static void logWaitTime(int pageNumber) {
+        logger.info("Страница {}: ожидание отрисовки {} мс ({})", pageNumber,
+                waitNanos.get()[0] / 1_000_000, FIXED_SLEEPS ? "фиксированные паузы" : "по событиям DOM");
+    }
+}
@@ -0,0 +1,192 @@
+package vk.chatbot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Очередь между Long Poll и обработкой событий. Каждое событие попадает в
+ * одну из полос по peer_id: сообщения одного диалога обрабатываются строго
+ * по порядку, разные диалоги — параллельно. Очереди ограничены, поэтому при
+ * перегрузке поток Long Poll ждёт в {@link #submit} (backpressure).
+ * <p>
+ * В режиме {@code -Dvkbot.execution=virtual} (Java 21+) каждое событие
+ * выполняется в собственном виртуальном потоке; порядок внутри диалога
+ * сохраняется цепочкой задач, а число событий в обработке ограничено
+ * той же ёмкостью очереди.
+ */
+public class UpdateDispatcher {
+    public enum Mode { LANES, VIRTUAL }
+
+    private static final Logger logger = LoggerFactory.getLogger(UpdateDispatcher.class);
+    private static final int WORKERS = Integer.getInteger("vkbot.workers", 4);
+    private static final int QUEUE_CAPACITY = Integer.getInteger("vkbot.queueCapacity", 256);
+    private static final ExecutorService virtualExecutor = createVirtualExecutor();
+    private static final Mode MODE = resolveMode();
+
+    private static final ConcurrentHashMap<Integer, CompletableFuture<Void>> peerTails = new ConcurrentHashMap<>();
+    private static final Semaphore inFlight = new Semaphore(QUEUE_CAPACITY);
+
+    private static final BlockingQueue<MessageEvent>[] lanes = createLanes();
+    private static final Thread[] workers = new Thread[WORKERS];
+    private static volatile boolean running;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static BlockingQueue<MessageEvent>[] createLanes() {
+        BlockingQueue<MessageEvent>[] result = new BlockingQueue[WORKERS];
+        for (int i = 0; i < WORKERS; i++) {
+            result[i] = new ArrayBlockingQueue<>(Math.max(1, QUEUE_CAPACITY / WORKERS));
+        }
+        return result;
+    }
+
+    public static synchronized void start() {
+        if (running) return;
+        running = true;
+        if (MODE == Mode.VIRTUAL) {
+            logger.info("События обрабатываются в виртуальных потоках, лимит: {}", QUEUE_CAPACITY);
+            return;
+        }
+        for (int i = 0; i < WORKERS; i++) {
+            BlockingQueue<MessageEvent> lane = lanes[i];
+            workers[i] = new Thread(() -> runLane(lane), "update-worker-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        logger.info("Запущено обработчиков событий: {}, ёмкость очереди: {}", WORKERS, QUEUE_CAPACITY);
+    }
+
+    /**
+     * Ставит событие в очередь его диалога. Блокируется, если очередь полна.
+     */
+    public static void submit(MessageEvent update) throws InterruptedException {
+        if (!running) {
+            start();
+        }
+        if (MODE == Mode.VIRTUAL) {
+            submitVirtual(update);
+            return;
+        }
+        BlockingQueue<MessageEvent> lane = lanes[Math.floorMod(update.getPeerId(), WORKERS)];
+        if (!lane.offer(update)) {
+            logger.warn("Очередь обработки заполнена ({}), ожидаем освобождения", getQueueDepth());
+            lane.put(update);
+        }
+    }
+
+    public static Mode getMode() {
+        return MODE;
+    }
+
+    /**
+     * Исполнитель «поток на задачу» для вспомогательных задач бота:
+     * виртуальные потоки, если они доступны и включены, иначе {@code null}.
+     */
+    static ExecutorService getVirtualExecutor() {
+        return MODE == Mode.VIRTUAL ? virtualExecutor : null;
+    }
+
+    public static int getQueueDepth() {
+        if (MODE == Mode.VIRTUAL) {
+            return QUEUE_CAPACITY - inFlight.availablePermits();
+        }
+        int depth = 0;
+        for (BlockingQueue<MessageEvent> lane : lanes) {
+            depth += lane.size();
+        }
+        return depth;
+    }
+
+    public static synchronized void shutdown() {
+        running = false;
+        for (Thread worker : workers) {
+            if (worker != null) {
+                worker.interrupt();
+            }
+        }
+        if (virtualExecutor != null) {
+            virtualExecutor.shutdown();
+            try {
+                if (!virtualExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                    virtualExecutor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                virtualExecutor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void submitVirtual(MessageEvent update) throws InterruptedException {
+        if (!inFlight.tryAcquire()) {
+            logger.warn("Достигнут лимит событий в обработке ({}), ожидаем освобождения", QUEUE_CAPACITY);
+            inFlight.acquire();
+        }
+        int peerId = update.getPeerId();
+        AtomicReference<CompletableFuture<Void>> created = new AtomicReference<>();
+        peerTails.compute(peerId, (id, tail) -> {
+            CompletableFuture<Void> previous = tail == null
+                    ? CompletableFuture.completedFuture(null)
+                    : tail.exceptionally(error -> null);
+            created.set(previous.thenRunAsync(() -> {
+                try {
+                    VkBot.processMessage(update);
+                } finally {
+                    inFlight.release();
+                }
+            }, virtualExecutor));
+            return created.get();
+        });
+        CompletableFuture<Void> tail = created.get();
+        tail.whenComplete((ignored, error) -> peerTails.remove(peerId, tail));
+    }
+
+    private static Mode resolveMode() {
+        String value = System.getProperty("vkbot.execution", "lanes");
+        if ("virtual".equalsIgnoreCase(value)) {
+            if (virtualExecutor != null) {
+                return Mode.VIRTUAL;
+            }
+            logger.warn("Виртуальные потоки недоступны в Java {}, используется режим lanes",
+                    Runtime.version().feature());
+        }
+        return Mode.LANES;
+    }
+
+    // Через рефлексию, чтобы сборка под Java 17 оставалась рабочей
+    private static ExecutorService createVirtualExecutor() {
+        if (!"virtual".equalsIgnoreCase(System.getProperty("vkbot.execution"))) {
+            return null;
+        }
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static void runLane(BlockingQueue<MessageEvent> lane) {
+        while (running) {
+            try {
+                MessageEvent update = lane.poll(1, TimeUnit.SECONDS);
+                if (update != null) {
+                    VkBot.processMessage(update);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("Ошибка в обработчике событий", e);
+            }
+        }
+    }
+}
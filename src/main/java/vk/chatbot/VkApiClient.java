@@ -0,0 +1,241 @@
+package vk.chatbot;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.annotations.SerializedName;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.FormBody;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Неблокирующий клиент VK API. Вызов ждёт токен {@link ApiRateLimiter},
+ * уходит через {@link Call#enqueue} и возвращает {@link CompletableFuture}
+ * — поток не занят ни в ожидании лимита, ни в ожидании ответа. Число
+ * одновременных запросов ограничивает диспетчер OkHttp переданного клиента.
+ * <p>
+ * Ошибка из поля {@code error} превращается в {@link VkApiException};
+ * временные ошибки ({@link VkApiException#isRetryable()}) повторяются до
+ * {@code vkbot.apiRetries} раз с экспоненциальной задержкой.
+ * <p>
+ * Параметры, включая {@code access_token}, всегда уходят телом
+ * {@code application/x-www-form-urlencoded} POST: текст сообщения до 4096
+ * символов кириллицы в процентной кодировке не помещается в разумный URL,
+ * а токен не попадает в журналы запросов по пути.
+ */
+public class VkApiClient {
+    private static final Logger logger = LoggerFactory.getLogger(VkApiClient.class);
+    private static final Gson gson = new Gson();
+    private static final int MAX_RETRIES = Integer.getInteger("vkbot.apiRetries", 5);
+    private static final long MAX_BACKOFF_MS = 5000;
+
+    private final OkHttpClient client;
+    // Разобранный один раз адрес API: для вызова к нему добавляется только имя метода
+    private final HttpUrl apiUrl;
+    private final String accessToken;
+    private final String version;
+    private final ApiRateLimiter limiter;
+
+    public VkApiClient(OkHttpClient client, String apiUrl, String accessToken, String version, ApiRateLimiter limiter) {
+        this.client = client;
+        this.apiUrl = HttpUrl.get(apiUrl);
+        this.accessToken = accessToken;
+        this.version = version;
+        this.limiter = limiter;
+    }
+
+    /**
+     * Ответ {@code groups.getLongPollServer}.
+     */
+    public static final class LongPollServer {
+        private String server;
+        private String key;
+        private String ts;
+
+        public String getServer() {
+            return server;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getTs() {
+            return ts;
+        }
+    }
+
+    /**
+     * Элемент ответа {@code users.get}.
+     */
+    public static final class User {
+        private int id;
+        @SerializedName("first_name")
+        private String firstName;
+        @SerializedName("last_name")
+        private String lastName;
+
+        public int getId() {
+            return id;
+        }
+
+        public String getFirstName() {
+            return firstName;
+        }
+
+        public String getLastName() {
+            return lastName;
+        }
+    }
+
+    public CompletableFuture<LongPollServer> getLongPollServer(int groupId) {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("group_id", String.valueOf(groupId));
+        return call("groups.getLongPollServer", params, ApiRateLimiter.Priority.SYSTEM)
+                .thenApply(response -> gson.fromJson(response, LongPollServer.class));
+    }
+
+    public CompletableFuture<List<User>> getUsers(Collection<Integer> userIds) {
+        StringJoiner ids = new StringJoiner(",");
+        for (Integer userId : userIds) {
+            ids.add(String.valueOf(userId));
+        }
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("user_ids", ids.toString());
+        params.put("fields", "first_name,last_name");
+        return call("users.get", params, ApiRateLimiter.Priority.LOOKUP)
+                .thenApply(response -> Arrays.asList(gson.fromJson(response, User[].class)));
+    }
+
+    /**
+     * Вызов {@code execute}. Возвращается весь ответ: кроме {@code response}
+     * в нём может быть {@code execute_errors} с ошибками отдельных вызовов.
+     */
+    public CompletableFuture<JsonObject> execute(String code, ApiRateLimiter.Priority priority) {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("code", code);
+        return callRaw("execute", params, priority);
+    }
+
+    /**
+     * Значение поля {@code response}.
+     */
+    public CompletableFuture<JsonElement> call(String method, Map<String, String> params,
+                                               ApiRateLimiter.Priority priority) {
+        return callRaw(method, params, priority).thenApply(json -> json.get("response"));
+    }
+
+    public CompletableFuture<JsonObject> callRaw(String method, Map<String, String> params,
+                                                 ApiRateLimiter.Priority priority) {
+        Request request = buildRequest(method, params);
+        CompletableFuture<JsonObject> result = new CompletableFuture<>();
+        attempt(method, request, priority, 0, result);
+        return result;
+    }
+
+    /**
+     * Ждёт результата в вызывающем потоке, разворачивая ошибку обратно
+     * в {@link IOException}.
+     */
+    public static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Прервано ожидание вызова API", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private void attempt(String method, Request request, ApiRateLimiter.Priority priority, int attempt,
+                         CompletableFuture<JsonObject> result) {
+        limiter.acquire(priority)
+                .thenCompose(ignored -> send(method, request))
+                .whenComplete((json, error) -> {
+                    if (error == null) {
+                        result.complete(json);
+                        return;
+                    }
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    if (cause instanceof VkApiException && ((VkApiException) cause).isRetryable()
+                            && attempt < MAX_RETRIES) {
+                        if (((VkApiException) cause).getCode() == VkApiException.TOO_MANY_REQUESTS) {
+                            limiter.onThrottled();
+                        }
+                        long backoff = Math.min(MAX_BACKOFF_MS, 200L << attempt);
+                        backoff += ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+                        logger.warn("VK API {}: {}, повтор через {} мс", method, cause.getMessage(), backoff);
+                        Metrics.increment("vkbot_api_retries_total{method=\"" + method + "\"}");
+                        CompletableFuture.delayedExecutor(backoff, TimeUnit.MILLISECONDS).execute(() ->
+                                attempt(method, request, priority, attempt + 1, result));
+                        return;
+                    }
+                    result.completeExceptionally(cause);
+                });
+    }
+
+    private CompletableFuture<JsonObject> send(String method, Request request) {
+        CompletableFuture<JsonObject> future = new CompletableFuture<>();
+        long started = System.nanoTime();
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                Metrics.recordSince("vkbot_api_seconds{method=\"" + method + "\"}", started);
+                try (response) {
+                    if (!response.isSuccessful()) {
+                        throw new IOException("HTTP error: " + response.code());
+                    }
+                    JsonObject json = JsonParser.parseReader(response.body().charStream()).getAsJsonObject();
+                    if (json.has("error")) {
+                        throw VkApiException.fromJson(json.getAsJsonObject("error"));
+                    }
+                    future.complete(json);
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private Request buildRequest(String method, Map<String, String> params) {
+        FormBody.Builder form = new FormBody.Builder();
+        params.forEach(form::add);
+        FormBody body = form.add("access_token", accessToken).add("v", version).build();
+        Metrics.add("vkbot_api_request_bytes_total{method=\"" + method + "\"}", body.contentLength());
+        return new Request.Builder()
+                .url(apiUrl.newBuilder().addPathSegment(method).build())
+                .post(body)
+                .build();
+    }
+}
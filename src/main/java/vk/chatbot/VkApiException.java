@@ -0,0 +1,41 @@
+package vk.chatbot;
+
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+
+/**
+ * Ошибка, которую вернул VK API в поле {@code error} (или {@code execute_errors}).
+ */
+public class VkApiException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public static final int UNKNOWN = 1;
+    public static final int AUTHORIZATION_FAILED = 5;
+    public static final int TOO_MANY_REQUESTS = 6;
+    public static final int FLOOD_CONTROL = 9;
+    public static final int INTERNAL_ERROR = 10;
+
+    private final int code;
+
+    public VkApiException(int code, String message) {
+        super("API error " + code + ": " + message);
+        this.code = code;
+    }
+
+    static VkApiException fromJson(JsonObject error) {
+        return new VkApiException(error.get("error_code").getAsInt(),
+                error.has("error_msg") ? error.get("error_msg").getAsString() : "");
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Временная ошибка на стороне VK: тот же вызов можно повторить позже.
+     */
+    public boolean isRetryable() {
+        return code == UNKNOWN || code == TOO_MANY_REQUESTS || code == FLOOD_CONTROL || code == INTERNAL_ERROR;
+    }
+}
@@ -12,11 +12,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.net.URLEncoder;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.Duration;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.TimeoutException; // Явное указание нужного TimeoutException
@@ -26,25 +24,49 @@ public class VkBot {
     private static final OkHttpClient client = Connection.client;
     private static final String ACCESS_TOKEN = Connection.ACCESS_TOKEN;
     private static final String VK_API_VERSION = Connection.VK_API_VERSION;
-    private static final ExecutorService executor = Executors.newFixedThreadPool(3);
+    private static final ExecutorService executor = UpdateDispatcher.getVirtualExecutor() != null
+            ? UpdateDispatcher.getVirtualExecutor()
+            : Executors.newFixedThreadPool(3);
     private static final int SELENIUM_TIMEOUT_SEC = 30;
     private static final int MESSAGE_LIMIT = 4096;
+    private static final int PROFILE_TIMEOUT_SEC = 10;
     private static final String SCREENSHOT_DIR = "screenshots";
-
-    private static List<ProjectInfo> allProjects = new ArrayList<>();
+    private static final int SEARCH_TOP_K = 3;
+    private static final boolean CATALOG_SOURCE_HTTP =
+            "http".equalsIgnoreCase(System.getProperty("vkbot.catalogSource", "selenium"));
+
+    private static final long CATALOG_REFRESH_MINUTES = Long.getLong("vkbot.refreshMinutes", 60);
+
+    static final CatalogRefresher catalog = new CatalogRefresher(VkBot::loadCatalog);
+    static final CommandRouter commands = new CommandRouter(executor)
+            .onExact("start", (event, arg) -> sendWelcomeMessage(event), "начать")
+            .onPrefix("search", CommandRouter.Policy.ASYNC, VkBot::searchProjects, "найди")
+            .onPrefix("yesno", CommandRouter.Policy.INLINE, (event, arg) -> sendMessage(event, answerYesNo(arg)),
+                    "можно ли", "возможно ли", "есть ли")
+            .otherwise("help", CommandRouter.Policy.INLINE, (event, text) -> sendHelpMessage(event));
+    private static final EventDeduplicator handledEvents = EventDeduplicator.fromProperties();
+    private static final SearchCache searchCache = new SearchCache(Integer.getInteger("vkbot.searchCacheSize", 1024));
 
     public static void startLongPoll() {
         logger.info("=== Запуск VK бота ===");
-        WebDriver driver = WebDriverProvider.getDriver();
-
-        // Парсим проекты один раз при запуске
-        allProjects = SiteAnalyzer.parseAllProjects();
-        logger.info("Найдено проектов: {}", allProjects.size());
 
-        if (!testSeleniumConnection(driver)) {
-            logger.error("Ошибка подключения Selenium");
-            closeResources();
-            return;
+        // Тёплый старт: отвечаем по снимку, а свежий каталог грузим в фоне
+        List<ProjectInfo> snapshot = CatalogSnapshot.load(CatalogSnapshot.DEFAULT_PATH);
+        if (snapshot != null) {
+            catalog.publish(snapshot);
+            logger.info("Каталог загружен из снимка: {} проектов", snapshot.size());
+            catalog.schedule(0, CATALOG_REFRESH_MINUTES, TimeUnit.MINUTES);
+        } else {
+            // Парсим проекты один раз при запуске
+            catalog.refresh();
+            logger.info("Найдено проектов: {}", catalog.current().size());
+
+            if (!CATALOG_SOURCE_HTTP && !testSeleniumConnection()) {
+                logger.error("Ошибка подключения Selenium");
+                closeResources();
+                return;
+            }
+            catalog.schedule(CATALOG_REFRESH_MINUTES, CATALOG_REFRESH_MINUTES, TimeUnit.MINUTES);
         }
 
         try {
@@ -54,69 +76,143 @@ public class VkBot {
             logger.warn("Не удалось создать директорию для скриншотов", e);
         }
 
+        registerGauges();
+        Metrics.startServer();
         logger.info("Бот готов к работе");
-        Connection.startLongPoll();
+        if (CallbackServer.ENABLED) {
+            startCallbackIntake();
+        } else {
+            Connection.startLongPoll();
+        }
+    }
+
+    // -Dvkbot.intake=callback — события присылает VK, Long Poll не нужен
+    private static void startCallbackIntake() {
+        try {
+            UpdateDispatcher.start();
+            CallbackServer.start();
+            CallbackServer.awaitStop();
+        } catch (IOException e) {
+            logger.error("Не удалось запустить сервер Callback API", e);
+            closeResources();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void registerGauges() {
+        Metrics.gauge("vkbot_update_queue_depth", UpdateDispatcher::getQueueDepth);
+        Metrics.gauge("vkbot_outbound_pending", MessageDispatcher::getPendingCount);
+        Metrics.gauge("vkbot_api_rate_limiter_waiting", Connection.rateLimiter::getWaitingCount);
+        Metrics.gauge("vkbot_catalog_projects", () -> catalog.current().size());
+        Metrics.gauge("vkbot_search_cache_entries", searchCache::size);
+        if (executor instanceof ThreadPoolExecutor) {
+            Metrics.gauge("vkbot_search_queue_depth", () -> ((ThreadPoolExecutor) executor).getQueue().size());
+        }
+    }
+
+    // -Dvkbot.catalogSource=http — загрузка каталога без Chrome
+    private static List<ProjectInfo> loadCatalog() {
+        if (CATALOG_SOURCE_HTTP) {
+            List<ProjectInfo> projects = new HttpCatalogFetcher().parseAllProjects();
+            if (!projects.isEmpty()) {
+                return projects;
+            }
+            logger.warn("HTTP-источник каталога не вернул проектов, используется Selenium");
+        }
+        return SiteAnalyzer.parseAllProjects();
     }
 
+    /**
+     * Событие в виде JSON (Callback API): {@code message_new} ставится в ту же
+     * очередь {@link UpdateDispatcher}, что и события Long Poll.
+     */
     protected static void processUpdate(JsonObject update) {
         try {
             if (!"message_new".equals(update.get("type").getAsString())) return;
 
             JsonObject msg = update.getAsJsonObject("object").getAsJsonObject("message");
-            int peerId = msg.get("peer_id").getAsInt();
-            String text = msg.get("text").getAsString().trim();
-
-            logger.info("Получено сообщение от {}: {}", peerId, text);
-            if (text.equalsIgnoreCase("начать")) {
-                sendWelcomeMessage(peerId);
-            } else if (text.toLowerCase().startsWith("найди")) {
-                processSearchRequest(peerId, text);
-            } else if (isYesNoQuestion(text)) {
-                sendMessage(peerId, answerYesNo(text));
-            } else {
-                sendHelpMessage(peerId);
-            }
+            String eventId = update.has("event_id") ? update.get("event_id").getAsString() : null;
+            UpdateDispatcher.submit(new MessageEvent(eventId, msg.get("peer_id").getAsInt(), msg.get("text").getAsString()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Ошибка обработки сообщения", e);
+        }
+    }
 
+    /**
+     * Событие считается обработанным, только когда команда завершилась и
+     * её ответы переданы в {@link MessageDispatcher}; если она упала,
+     * повтор события обработается заново.
+     */
+    protected static void processMessage(MessageEvent event) {
+        String eventId = event.getEventId();
+        if (!handledEvents.tryBegin(eventId)) {
+            Metrics.increment("vkbot_duplicate_events_total");
+            return;
+        }
+        try {
+            int peerId = event.getPeerId();
+            String text = event.getText().trim();
+
+            long started = System.nanoTime();
             if (containsBadWords(text)) {
-                sendMessage(peerId, "⚠️ Ваше сообщение содержит некорректные выражения.");
+                Metrics.increment("vkbot_moderation_blocked_total");
+                AsyncLog.log("message_blocked", peerId, null, System.nanoTime() - started, null);
+                sendMessage(event, "⚠️ Ваше сообщение содержит некорректные выражения.");
+                handledEvents.markHandled(eventId);
                 return;
             }
+
+            commands.dispatch(event, text).whenComplete((command, error) -> {
+                if (error == null) {
+                    handledEvents.markHandled(eventId);
+                } else {
+                    handledEvents.abandon(eventId);
+                }
+                AsyncLog.log("message_in", peerId, command, System.nanoTime() - started, text);
+            });
         } catch (Exception e) {
+            handledEvents.abandon(eventId);
             logger.error("Ошибка обработки сообщения", e);
         }
     }
 
-    private static boolean isYesNoQuestion(String text) {
-        String lower = text.toLowerCase();
-        return lower.startsWith("можно ли") || lower.startsWith("возможно ли") || lower.startsWith("есть ли");
-    }
-
     private static String answerYesNo(String text) {
         // Можно добавить простую логику или всегда отвечать "Да."
         return "Да.";
     }
 
-    private static String generateAnswer(String query) {
-        String lowerQuery = query.toLowerCase();
-        for (ProjectInfo project : allProjects) {
-            if (project.getTitle().toLowerCase().contains(lowerQuery) ||
-                project.getDescription().toLowerCase().contains(lowerQuery)) {
-                return String.format("Нашёл проект:\n%s\n%s\n%s", project.getTitle(), project.getDescription(), project.getUrl());
-            }
+    static String generateAnswer(String query) {
+        Catalog current = catalog.current();
+        return searchCache.get(current, query, q -> buildAnswer(current, q));
+    }
+
+    static String buildAnswer(Catalog current, String query) {
+        List<SearchIndex.Hit> hits = current.getIndex().search(query, SEARCH_TOP_K);
+        if (hits.isEmpty()) {
+            return "Я не нашёл точного ответа на ваш вопрос. Попробуйте задать его иначе или воспользуйтесь поиском на сайте: https://education.vk.company/education_projects";
+        }
+        if (hits.size() == 1) {
+            ProjectInfo project = hits.get(0).getProject();
+            return String.format("Нашёл проект:\n%s\n%s\n%s", project.getTitle(), project.getDescription(), project.getUrl());
+        }
+
+        StringBuilder sb = new StringBuilder("Нашёл проекты:");
+        for (int i = 0; i < hits.size(); i++) {
+            ProjectInfo project = hits.get(i).getProject();
+            sb.append(String.format("\n\n%d. %s\n%s\n%s", i + 1, project.getTitle(), project.getDescription(), project.getUrl()));
         }
-        return "Я не нашёл точного ответа на ваш вопрос. Попробуйте задать его иначе или воспользуйтесь поиском на сайте: https://education.vk.company/education_projects";
+        return sb.toString();
     }
 
-    private static void processSearchRequest(int peerId, String text) {
-        executor.submit(() -> {
-            String query = text.substring(5).trim();
-            if (query.isEmpty()) {
-                sendMessage(peerId, "Пожалуйста, укажите поисковый запрос после команды \"найди\"");
-                return;
-            }
-            String result = generateAnswer(query);
-            sendMessage(peerId, result);
-        });
+    private static void searchProjects(MessageEvent event, String query) {
+        if (query.isEmpty()) {
+            sendMessage(event, "Пожалуйста, укажите поисковый запрос после команды \"найди\"");
+            return;
+        }
+        sendMessage(event, generateAnswer(query));
     }
 
     // Остальные методы остаются без изменений
@@ -163,68 +259,34 @@ public class VkBot {
         }
     }
 
-    private static void sendWelcomeMessage(int peerId) {
-        String msg = String.format(
-                "Привет, %s! Я бот по поиску информации на VK Education Projects",
-                getSenderName(peerId));
-        sendMessage(peerId, msg);
-
-        sendHelpMessage(peerId);
+    // Имя приходит асинхронно; пока профиль грузится, поток не занят
+    private static CompletableFuture<Void> sendWelcomeMessage(MessageEvent event) {
+        // copy(): future общий для всех ждущих этого пользователя
+        return ProfileCache.getFirstName(event.getPeerId()).copy()
+                .completeOnTimeout(null, PROFILE_TIMEOUT_SEC, TimeUnit.SECONDS)
+                .exceptionally(e -> {
+                    logger.error("Ошибка получения имени пользователя", e);
+                    return null;
+                })
+                .thenAccept(name -> {
+                    sendMessage(event, String.format(
+                            "Привет, %s! Я бот по поиску информации на VK Education Projects",
+                            name != null ? name : "Друг"));
+                    sendHelpMessage(event);
+                });
     }
 
-    private static void sendMessage(int peerId, String text) {
-        try {
-            if (text.length() > MESSAGE_LIMIT) {
-                text = text.substring(0, MESSAGE_LIMIT - 3) + "...";
-            }
-
-            String url = String.format(
-                    "https://api.vk.com/method/messages.send?peer_id=%d&message=%s&random_id=%d&access_token=%s&v=%s",
-                    peerId,
-                    URLEncoder.encode(text, "UTF-8"),
-                    ThreadLocalRandom.current().nextInt(10000),
-                    ACCESS_TOKEN,
-                    VK_API_VERSION
-            );
-
-            Request request = new Request.Builder()
-                    .url(url)
-                    .build();
-
-            try (Response response = client.newCall(request).execute()) {
-                if (!response.isSuccessful()) {
-                    logger.error("Ошибка отправки сообщения: HTTP {}", response.code());
-                }
-            }
-        } catch (Exception e) {
-            logger.error("Ошибка отправки сообщения", e);
+    // random_id из события: повторная обработка не даст дубля ответа
+    private static void sendMessage(MessageEvent event, String text) {
+        if (text.length() > MESSAGE_LIMIT) {
+            text = text.substring(0, MESSAGE_LIMIT - 3) + "...";
         }
-    }
 
-    private static String getSenderName(int userId) {
-        try {
-            String url = String.format(
-                    "https://api.vk.com/method/users.get?user_ids=%d&fields=first_name,last_name&access_token=%s&v=%s",
-                    userId, ACCESS_TOKEN, VK_API_VERSION
-            );
-
-            Request request = new Request.Builder().url(url).build();
-
-            try (Response response = client.newCall(request).execute()) {
-                JsonObject json = JsonParser.parseString(response.body().string()).getAsJsonObject();
-                if (json.has("error")) {
-                    throw new RuntimeException(json.getAsJsonObject("error").get("error_msg").getAsString());
-                }
-                JsonArray users = json.getAsJsonArray("response");
-                if (users.size() > 0) {
-                    JsonObject user = users.get(0).getAsJsonObject();
-                    return user.get("first_name").getAsString();
-                }
+        MessageDispatcher.send(event.getPeerId(), text, event.nextRandomId()).whenComplete((messageId, error) -> {
+            if (error != null) {
+                logger.error("Ошибка отправки сообщения", error);
             }
-        } catch (Exception e) {
-            logger.error("Ошибка получения имени пользователя", e);
-        }
-        return "Друг";
+        });
     }
 
     private static void takeScreenshot(String filename, WebDriver driver) {
@@ -238,7 +300,13 @@ public class VkBot {
 
     private static void closeResources() {
         try {
-            WebDriverProvider.quitDriver();
+            catalog.shutdown();
+            WebDriverProvider.quitAll();
+            Metrics.stopServer();
+            CallbackServer.stop();
+            UpdateDispatcher.shutdown();
+            MessageDispatcher.shutdown();
+            handledEvents.close();
             executor.shutdown();
             if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
                 executor.shutdownNow();
@@ -265,17 +333,19 @@ public class VkBot {
         return msg.substring(0, Math.min(200, msg.length()));
     }
 
-    private static void sendHelpMessage(int peerId) {
+    private static void sendHelpMessage(MessageEvent event) {
         String helpText =
                 "Доступные команды:\n" +
                         "• \"начать\" - приветственное сообщение\n" +
                         "• \"найди [запрос]\" - поиск информации\n\n" +
                         "Пример: \"найди курсы по Java\"";
-        sendMessage(peerId, helpText);
+        sendMessage(event, helpText);
     }
 
-    private static boolean testSeleniumConnection(WebDriver driver) {
+    private static boolean testSeleniumConnection() {
+        WebDriver driver = null;
         try {
+            driver = WebDriverProvider.lease();
             driver.get("https://www.google.com");
             new WebDriverWait(driver, Duration.ofSeconds(10))
                     .until(ExpectedConditions.titleContains("Google"));
@@ -283,15 +353,14 @@ public class VkBot {
         } catch (Exception e) {
             logger.error("Ошибка тестирования подключения Selenium", e);
             return false;
+        } finally {
+            if (driver != null) {
+                WebDriverProvider.release(driver);
+            }
         }
     }
 
-    private static boolean containsBadWords(String text) {
-        String[] badWords = {"плохое_слово1", "плохое_слово2"}; // Заполните список
-        String lower = text.toLowerCase();
-        for (String word : badWords) {
-            if (lower.contains(word)) return true;
-        }
-        return false;
+    static boolean containsBadWords(String text) {
+        return ModerationFilter.getInstance().matches(text);
     }
 }
\ No newline at end of file
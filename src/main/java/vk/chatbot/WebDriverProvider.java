@@ -4,27 +4,144 @@ import io.github.bonigarcia.wdm.WebDriverManager;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.chrome.ChromeDriver;
 import org.openqa.selenium.chrome.ChromeOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Ограниченный пул сессий браузера. Сессия берётся через {@link #lease()}
+ * и обязательно возвращается через {@link #release} (или {@link #invalidate},
+ * если она сломалась). Перед выдачей сессия проверяется, а после
+ * {@code vkbot.driverMaxUses} использований пересоздаётся.
+ */
 public class WebDriverProvider {
-    private static WebDriver driver;
+    private static final Logger logger = LoggerFactory.getLogger(WebDriverProvider.class);
+    private static final int POOL_SIZE = Integer.getInteger("vkbot.driverPool", 2);
+    private static final int MAX_USES = Integer.getInteger("vkbot.driverMaxUses", 20);
+
+    private static final Semaphore permits = new Semaphore(POOL_SIZE, true);
+    private static final Deque<PooledDriver> idle = new ArrayDeque<>();
+    private static final Map<WebDriver, PooledDriver> leased = new ConcurrentHashMap<>();
+    private static boolean driverSetupDone;
 
-    public static WebDriver getDriver() {
-        if (driver == null) {
-            WebDriverManager.chromedriver().driverVersion("138.0.7204.184").setup();
-            ChromeOptions options = new ChromeOptions();
-            options.addArguments("--headless","--disable-gpu", "--no-sandbox", "--disable-dev-shm-usage");
-            options.addArguments("--user-agent=Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/138.0.0.0 Safari/537.36");
-            driver = new ChromeDriver(options);
+    private static final class PooledDriver {
+        final WebDriver driver;
+        int uses;
+
+        PooledDriver(WebDriver driver) {
+            this.driver = driver;
         }
-        return driver;
     }
 
-    public static void quitDriver() {
-        if (driver != null) {
-            driver.quit();
-            driver = null;
+    public static int getPoolSize() {
+        return POOL_SIZE;
+    }
+
+    public static WebDriver lease() {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Прервано ожидание сессии браузера", e);
+        }
+
+        try {
+            PooledDriver pooled;
+            while ((pooled = pollIdle()) != null) {
+                if (pooled.uses < MAX_USES && isHealthy(pooled.driver)) {
+                    break;
+                }
+                quit(pooled.driver);
+            }
+            if (pooled == null) {
+                pooled = new PooledDriver(createDriver());
+            }
+            pooled.uses++;
+            leased.put(pooled.driver, pooled);
+            return pooled.driver;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public static void release(WebDriver driver) {
+        PooledDriver pooled = leased.remove(driver);
+        if (pooled == null) {
+            return;
+        }
+        if (pooled.uses >= MAX_USES || !isHealthy(driver)) {
+            quit(driver);
+        } else {
+            synchronized (idle) {
+                idle.push(pooled);
+            }
+        }
+        permits.release();
+    }
+
+    /**
+     * Закрывает сломанную сессию вместо возврата в пул.
+     */
+    public static void invalidate(WebDriver driver) {
+        if (leased.remove(driver) != null) {
+            quit(driver);
+            permits.release();
         }
     }
 
+    public static void quitAll() {
+        synchronized (idle) {
+            for (PooledDriver pooled : idle) {
+                quit(pooled.driver);
+            }
+            idle.clear();
+        }
+        for (WebDriver driver : leased.keySet()) {
+            quit(driver);
+        }
+        leased.clear();
+    }
+
+    private static PooledDriver pollIdle() {
+        synchronized (idle) {
+            return idle.poll();
+        }
+    }
 
-}
\ No newline at end of file
+    private static boolean isHealthy(WebDriver driver) {
+        try {
+            driver.getWindowHandle();
+            return true;
+        } catch (Exception e) {
+            logger.warn("Сессия браузера недоступна: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private static WebDriver createDriver() {
+        synchronized (WebDriverProvider.class) {
+            if (!driverSetupDone) {
+                WebDriverManager.chromedriver().driverVersion("138.0.7204.184").setup();
+                driverSetupDone = true;
+            }
+        }
+        ChromeOptions options = new ChromeOptions();
+        options.addArguments("--headless","--disable-gpu", "--no-sandbox", "--disable-dev-shm-usage");
+        options.addArguments("--user-agent=Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/138.0.0.0 Safari/537.36");
+        return new ChromeDriver(options);
+    }
+
+    private static void quit(WebDriver driver) {
+        try {
+            driver.quit();
+        } catch (Exception e) {
+            logger.debug("Ошибка закрытия сессии браузера: {}", e.getMessage());
+        }
+    }
+}